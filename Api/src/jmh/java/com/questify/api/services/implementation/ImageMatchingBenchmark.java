@@ -0,0 +1,265 @@
+package com.questify.api.services.implementation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the image-matching hot path behind /api/verify.
+ *
+ * Run with: mvn -Pbenchmark compile exec:exec -Djmh.args="ImageMatchingBenchmark -p imageEdge=2000"
+ *
+ * By default a reference "painting" and a rotated, darkened "phone photo" of it are generated
+ * procedurally, so results are reproducible without shipping binary fixtures. Pass
+ * -Dbenchmark.reference=/path/ref.jpg -Dbenchmark.photo=/path/photo.jpg (via jmh.args -jvmArgs)
+ * to benchmark real images instead; they are rescaled to imageEdge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageMatchingBenchmark {
+
+    /**
+     * Longest edge of the uploaded photo and reference image in pixels
+     */
+    @Param({"800", "2000", "4000"})
+    public int imageEdge;
+
+    /**
+     * ORB feature budget (image.matching.max-features)
+     */
+    @Param({"250", "500", "1000"})
+    public int maxFeatures;
+
+    /**
+     * Feature budget of the first progressive matching pass, 0 to always match with maxFeatures
+     */
+    @Param({"0", "150"})
+    public int initialFeatures;
+
+    /**
+     * RANSAC homography check for borderline scores (image.matching.geometric.enabled)
+     */
+    @Param({"false", "true"})
+    public boolean geometric;
+
+    private ImageMatchingService imageMatchingService;
+    private byte[] referenceImage;
+    private MultipartFile photo;
+    private ReferenceFeatures referenceFeatures;
+    private ReferenceFeatures otherPaintingFeatures;
+    private ReferenceFeatures photoFeatures;
+    private byte[] storedReferenceFeatures;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        imageMatchingService = new ImageMatchingService(1, 64, 3, 1024, 2.0, maxFeatures, initialFeatures, 0.15,
+                geometric, 5.0, 40,
+                new ScanMetrics(new SimpleMeterRegistry()));
+
+        BufferedImage reference = loadOrGenerateReference();
+        referenceImage = encode(scale(reference, imageEdge));
+        photo = new BytesMultipartFile(encode(loadOrGeneratePhoto(reference)));
+
+        referenceFeatures = imageMatchingService.extractReferenceFeatures(referenceImage);
+        otherPaintingFeatures = imageMatchingService.extractReferenceFeatures(encode(scale(generateReference(7), imageEdge)));
+        photoFeatures = imageMatchingService.extractImageFeatures(photo);
+        storedReferenceFeatures = referenceFeatures.toBytes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        imageMatchingService.shutdown();
+    }
+
+    /**
+     * Scan with the reference features already in ReferenceFeatureCache (steady state)
+     */
+    @Benchmark
+    public double compareImagesWarmCache() throws IOException {
+        return imageMatchingService.compareImages(photo, referenceFeatures);
+    }
+
+    /**
+     * Scan of the wrong painting, a clear non-match that progressive matching can settle early
+     */
+    @Benchmark
+    public double compareImagesOtherPainting() throws IOException {
+        return imageMatchingService.compareImages(photo, otherPaintingFeatures);
+    }
+
+    /**
+     * Scan on a cold node that loads persisted .orb features from MinIO (download excluded)
+     */
+    @Benchmark
+    public double compareImagesStoredFeatures() throws IOException {
+        return imageMatchingService.compareImages(photo, ReferenceFeatures.fromBytes(storedReferenceFeatures));
+    }
+
+    /**
+     * Scan with no cached or stored features: the reference JPEG is decoded and extracted as well
+     */
+    @Benchmark
+    public double compareImagesColdCache() throws IOException {
+        return imageMatchingService.compareImages(photo, imageMatchingService.extractReferenceFeatures(referenceImage));
+    }
+
+    /**
+     * Descriptor matching and scoring only (performFeatureMatching without detection)
+     */
+    @Benchmark
+    public double performFeatureMatching() throws IOException {
+        return imageMatchingService.compareFeatures(photoFeatures, referenceFeatures);
+    }
+
+    /**
+     * Feature extraction of the uploaded photo only (decode, preprocess, detectAndCompute)
+     */
+    @Benchmark
+    public ReferenceFeatures extractPhotoFeatures() throws IOException {
+        return imageMatchingService.extractImageFeatures(photo);
+    }
+
+    private BufferedImage loadOrGenerateReference() throws IOException {
+        String path = System.getProperty("benchmark.reference");
+        if (path != null) {
+            return ImageIO.read(new File(path));
+        }
+        return generateReference(42);
+    }
+
+    private static BufferedImage generateReference(long seed) {
+        BufferedImage image = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Random random = new Random(seed);
+        g.setColor(new Color(random.nextInt()));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        for (int i = 0; i < 600; i++) {
+            g.setColor(new Color(random.nextInt()));
+            int x = random.nextInt(image.getWidth());
+            int y = random.nextInt(image.getHeight());
+            int w = 20 + random.nextInt(400);
+            int h = 20 + random.nextInt(400);
+            if (i % 3 == 0) {
+                g.fillOval(x, y, w, h);
+            } else if (i % 3 == 1) {
+                g.fillRect(x, y, w, h);
+            } else {
+                g.setStroke(new BasicStroke(2 + random.nextInt(12)));
+                g.drawLine(x, y, x + w, y + h);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    private BufferedImage loadOrGeneratePhoto(BufferedImage reference) throws IOException {
+        String path = System.getProperty("benchmark.photo");
+        if (path != null) {
+            return scale(ImageIO.read(new File(path)), imageEdge);
+        }
+
+        // Simulate a handheld shot: slight rotation, zoom and darker lighting
+        BufferedImage scaled = scale(reference, imageEdge);
+        BufferedImage photoImage = new BufferedImage(scaled.getWidth(), scaled.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = photoImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        AffineTransform transform = new AffineTransform();
+        transform.rotate(Math.toRadians(8), scaled.getWidth() / 2.0, scaled.getHeight() / 2.0);
+        transform.scale(1.1, 1.1);
+        g.drawImage(scaled, transform, null);
+        g.setColor(new Color(0, 0, 0, 70));
+        g.fillRect(0, 0, photoImage.getWidth(), photoImage.getHeight());
+        g.dispose();
+        return photoImage;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int longestEdge) {
+        double factor = (double) longestEdge / Math.max(source.getWidth(), source.getHeight());
+        int width = (int) Math.round(source.getWidth() * factor);
+        int height = (int) Math.round(source.getHeight() * factor);
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Minimal in-memory upload, standing in for the multipart file Spring hands to the controller
+     */
+    private static class BytesMultipartFile implements MultipartFile {
+
+        private final byte[] content;
+
+        private BytesMultipartFile(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            return "image";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "photo.jpg";
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/jpeg";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            Files.write(dest, content);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.questify.api.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Separate, bounded executors for @Async work, so a slow SMTP server cannot hold up webhook
+ * delivery (or the other way round) and a burst of events cannot grow an unbounded queue.
+ *
+ * Each executor publishes Micrometer gauges (executor.queued, executor.active, executor.pool.size, ...)
+ * tagged name=webhook|email|background, plus executor.rejected when its queue overflows:
+ * - webhook: skips the outbox drain and logs it; the dispatcher's periodic poll delivers the events later
+ * - email: drops the mail and logs it; never runs SMTP on the caller, which may be a request thread
+ *   holding a transaction (e.g. the certificate mail sent while a scan is recorded)
+ * - background: runs the task on the caller; used for any @Async method without an explicit executor
+ */
+@Slf4j
+@Configuration
+@EnableAsync
+public class AsyncConfig implements AsyncConfigurer {
+
+    public static final String WEBHOOK_EXECUTOR = "webhookExecutor";
+    public static final String EMAIL_EXECUTOR = "emailExecutor";
+    public static final String BACKGROUND_EXECUTOR = "backgroundExecutor";
+
+    // Only the BeanFactory here: AsyncConfigurers are created early, before the MeterRegistry is fully configured
+    private final BeanFactory beanFactory;
+    private final boolean virtualThreads;
+
+    public AsyncConfig(
+            BeanFactory beanFactory,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.beanFactory = beanFactory;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Bean(WEBHOOK_EXECUTOR)
+    public ThreadPoolTaskExecutor webhookExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${async.webhook.threads:8}") int threads,
+            @Value("${async.webhook.queue-capacity:500}") int queueCapacity
+    ) {
+        return createExecutor(meterRegistry, "webhook", threads, queueCapacity, (task, executor) ->
+                log.warn("Webhook executor saturated ({} queued), leaving outbox to the next poll", executor.getQueue().size())
+        );
+    }
+
+    @Bean(EMAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor emailExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${async.email.threads:2}") int threads,
+            @Value("${async.email.queue-capacity:200}") int queueCapacity
+    ) {
+        return createExecutor(meterRegistry, "email", threads, queueCapacity, (task, executor) ->
+                log.warn("Email executor saturated ({} queued), dropping mail", executor.getQueue().size())
+        );
+    }
+
+    @Bean(BACKGROUND_EXECUTOR)
+    public ThreadPoolTaskExecutor backgroundExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${async.background.threads:4}") int threads,
+            @Value("${async.background.queue-capacity:200}") int queueCapacity
+    ) {
+        return createExecutor(meterRegistry, "background", threads, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return beanFactory.getBean(BACKGROUND_EXECUTOR, Executor.class);
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) -> log.error("Async method {} failed", method.getName(), ex);
+    }
+
+    private ThreadPoolTaskExecutor createExecutor(
+            MeterRegistry meterRegistry,
+            String name,
+            int threads,
+            int queueCapacity,
+            RejectedExecutionHandler overflowPolicy
+    ) {
+        Counter rejected = Counter.builder("executor.rejected")
+                .description("Tasks that did not fit in the executor queue")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(name + "-");
+        executor.setVirtualThreads(virtualThreads);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            overflowPolicy.rejectedExecution(task, pool);
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), name, Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+}
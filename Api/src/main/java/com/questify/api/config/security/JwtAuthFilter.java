@@ -1,12 +1,12 @@
 package com.questify.api.config.security;
 
-import com.questify.api.repository.UserRepository;
 import com.questify.api.model.User;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -16,15 +16,35 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.Optional;
 
+/**
+ * Authenticates requests carrying an access token.
+ *
+ * In stateless mode (jwt.stateless, the default) the principal is built from the signed claims, so
+ * a request costs no database read; tokens of users in the {@link RevokedUserCache} and tokens in the
+ * {@link TokenRevocationList} are refused.
+ * Otherwise the user is loaded through the short-lived {@link PrincipalCache}.
+ */
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final RevokedUserCache revokedUserCache;
+    private final TokenRevocationList tokenRevocationList;
+    private final PrincipalCache principalCache;
+    private final boolean stateless;
 
-    public JwtAuthFilter(JwtService jwtService, UserRepository userRepository) {
+    public JwtAuthFilter(
+            JwtService jwtService,
+            RevokedUserCache revokedUserCache,
+            TokenRevocationList tokenRevocationList,
+            PrincipalCache principalCache,
+            @Value("${jwt.stateless:true}") boolean stateless
+    ) {
         this.jwtService = jwtService;
-        this.userRepository = userRepository;
+        this.revokedUserCache = revokedUserCache;
+        this.tokenRevocationList = tokenRevocationList;
+        this.principalCache = principalCache;
+        this.stateless = stateless;
     }
 
     @Override
@@ -33,7 +53,6 @@ public class JwtAuthFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
 
         String jwt = null;
-        String userId = null;
 
         final String authHeader = request.getHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
@@ -50,17 +69,24 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
 
         if (jwt != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            userId = jwtService.getSubject(jwt);
+            Optional<VerifiedToken> verified = jwtService.verify(jwt);
 
-            if (jwtService.validateToken(jwt)) {
-                String tokenType = jwtService.getClaim(jwt, "type");
-                if (!"access".equals(tokenType)) {
+            if (verified.isPresent()) {
+                VerifiedToken token = verified.get();
+                if (!token.isAccessToken()) {
                     logger.error("Invalid token type: Only access tokens are allowed");
                     filterChain.doFilter(request, response);
                     return;
                 }
 
-                Optional<User> optionalUser = userRepository.findById(Long.parseLong(userId));
+                if (revokedUserCache.isRevoked(token.userId(), token.tokenVersion()) || tokenRevocationList.isRevoked(token)) {
+                    filterChain.doFilter(request, response);
+                    return;
+                }
+
+                Optional<User> optionalUser = stateless
+                        ? Optional.of(principalFromClaims(token))
+                        : principalCache.get(token.userId());
                 if (optionalUser.isEmpty()) {
                     filterChain.doFilter(request, response);
                     return;
@@ -79,4 +105,17 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Detached user holding only what the token vouches for: controllers use the id and the role,
+     * anything else has to be loaded through the id
+     */
+    private static User principalFromClaims(VerifiedToken token) {
+        return User.builder()
+                .id(token.userId())
+                .userType(token.role())
+                .tokenVersion(token.tokenVersion())
+                .enabled(true)
+                .build();
+    }
 }
\ No newline at end of file
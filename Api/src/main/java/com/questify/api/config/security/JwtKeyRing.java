@@ -0,0 +1,223 @@
+package com.questify.api.config.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.questify.api.model.JwtSigningKey;
+import com.questify.api.repository.JwtSigningKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ES256 signing keys for jwt.algorithm=ES256, selected by kid and published at /.well-known/jwks.json.
+ *
+ * Keys live in the jwt_signing_keys table so every node signs and verifies with the same set.
+ * A new key is generated every jwt.keys.rotation-days and published for jwt.keys.publish-ahead-minutes
+ * before any node signs with it, so verifiers that cache the JWKS (and the other nodes, which reload
+ * every jwt.keys.refresh-interval-ms) know it before the first token arrives. A replaced key keeps
+ * verifying until the longest-lived token it may have signed has expired, then it is deleted.
+ * The publish-ahead time must therefore cover at least one refresh interval; this is checked at startup.
+ *
+ * On a fresh install there is nothing published to wait for, so the first key signs right away.
+ * A node that meets a kid it does not know reloads the keys once instead of waiting for its next
+ * refresh, at most every jwt.keys.unknown-kid-refresh-seconds so made-up kids cannot hammer the database.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jwt.algorithm", havingValue = "ES256")
+public class JwtKeyRing {
+
+    private static final Duration EXPIRY_MARGIN = Duration.ofHours(1);
+
+    private final JwtSigningKeyRepository signingKeyRepository;
+    private final Duration rotationInterval;
+    private final Duration publishAhead;
+    private final long unknownKidRefreshMillis;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicLong lastUnknownKidRefresh = new AtomicLong();
+
+    private volatile Keys keys;
+
+    public JwtKeyRing(
+            JwtSigningKeyRepository signingKeyRepository,
+            @Value("${jwt.keys.rotation-days:30}") long rotationDays,
+            @Value("${jwt.keys.publish-ahead-minutes:60}") long publishAheadMinutes,
+            @Value("${jwt.keys.refresh-interval-ms:300000}") long refreshIntervalMillis,
+            @Value("${jwt.keys.unknown-kid-refresh-seconds:30}") long unknownKidRefreshSeconds
+    ) {
+        if (Duration.ofMinutes(publishAheadMinutes).toMillis() < refreshIntervalMillis) {
+            throw new IllegalStateException("jwt.keys.publish-ahead-minutes (" + publishAheadMinutes
+                    + ") must cover jwt.keys.refresh-interval-ms (" + refreshIntervalMillis
+                    + "), or other nodes reject tokens of a new key until their next refresh");
+        }
+        this.signingKeyRepository = signingKeyRepository;
+        this.rotationInterval = Duration.ofDays(rotationDays);
+        this.publishAhead = Duration.ofMinutes(publishAheadMinutes);
+        this.unknownKidRefreshMillis = unknownKidRefreshSeconds * 1000;
+    }
+
+    /**
+     * kid and signer of the key new tokens are signed with
+     */
+    public SigningKey signingKey() {
+        return keys().signingKey();
+    }
+
+    /**
+     * @return Verifier for the key with this kid, null if unknown or already retired
+     */
+    public JWSVerifier verifier(String kid) {
+        if (kid == null) {
+            return null;
+        }
+        JWSVerifier verifier = keys().verifiers().get(kid);
+        if (verifier == null && refreshForUnknownKid()) {
+            verifier = keys().verifiers().get(kid);
+        }
+        return verifier;
+    }
+
+    /**
+     * Public halves of all keys that may have signed a valid token
+     */
+    public JWKSet publicKeys() {
+        return keys().publicKeys();
+    }
+
+    /**
+     * Reload the keys, generating a new one when the newest is due for rotation and deleting
+     * keys that can no longer have signed an unexpired token
+     */
+    @Scheduled(fixedDelayString = "${jwt.keys.refresh-interval-ms:300000}")
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<JwtSigningKey> stored = signingKeyRepository.findAllByOrderByCreatedAtAsc();
+
+            if (stored.isEmpty() || stored.getLast().getCreatedAt().isBefore(now.minus(rotationInterval))) {
+                // Nodes rotating at the same moment may each add a key; both simply stay valid
+                stored = new ArrayList<>(stored);
+                stored.add(signingKeyRepository.save(generate()));
+                log.info("Generated JWT signing key {}", stored.getLast().getKid());
+            }
+
+            List<JwtSigningKey> retired = retiredKeys(stored, now);
+            if (!retired.isEmpty()) {
+                signingKeyRepository.deleteAll(retired);
+                stored = stored.stream().filter(key -> !retired.contains(key)).toList();
+                log.info("Deleted {} retired JWT signing keys", retired.size());
+            }
+
+            keys = load(stored, now);
+        } catch (JOSEException | ParseException e) {
+            throw new IllegalStateException("Failed to load JWT signing keys", e);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Refresh for a kid this node does not know yet, e.g. of a key another node just generated,
+     * unless that was already done within the last unknownKidRefreshMillis
+     */
+    private boolean refreshForUnknownKid() {
+        long now = System.currentTimeMillis();
+        long last = lastUnknownKidRefresh.get();
+        if (now - last < unknownKidRefreshMillis || !lastUnknownKidRefresh.compareAndSet(last, now)) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    private Keys keys() {
+        Keys current = keys;
+        if (current == null) {
+            refresh();
+            current = keys;
+        }
+        return current;
+    }
+
+    /**
+     * A key is retired once a newer key has been signing for longer than a token lives
+     */
+    private List<JwtSigningKey> retiredKeys(List<JwtSigningKey> stored, LocalDateTime now) {
+        Duration tokenLifetime = Duration.ofDays(JwtService.REFRESH_TOKEN_DAYS).plus(EXPIRY_MARGIN);
+        LocalDateTime signingSince = null;
+        for (int i = stored.size() - 1; i >= 0; i--) {
+            LocalDateTime keySigningSince = stored.get(i).getCreatedAt().plus(publishAhead);
+            if (!keySigningSince.isAfter(now)) {
+                signingSince = keySigningSince;
+                break;
+            }
+        }
+        if (signingSince == null || signingSince.plus(tokenLifetime).isAfter(now)) {
+            return List.of();
+        }
+
+        LocalDateTime replacedBefore = signingSince.minus(publishAhead);
+        return stored.stream()
+                .filter(key -> key.getCreatedAt().isBefore(replacedBefore))
+                .toList();
+    }
+
+    private Keys load(List<JwtSigningKey> stored, LocalDateTime now) throws JOSEException, ParseException {
+        Map<String, JWSVerifier> verifiers = new HashMap<>();
+        List<JWK> publicKeys = new ArrayList<>();
+        ECKey signing = null;
+
+        for (JwtSigningKey key : stored) {
+            ECKey ecKey = ECKey.parse(key.getJwk());
+            verifiers.put(ecKey.getKeyID(), new ECDSAVerifier(ecKey.toPublicJWK()));
+            publicKeys.add(ecKey.toPublicJWK());
+
+            // Newest key that has been published long enough; the newest of all on a fresh install
+            if (signing == null || !key.getCreatedAt().plus(publishAhead).isAfter(now)) {
+                signing = ecKey;
+            }
+        }
+
+        return new Keys(new SigningKey(signing.getKeyID(), new ECDSASigner(signing)), verifiers, new JWKSet(publicKeys));
+    }
+
+    private static JwtSigningKey generate() throws JOSEException {
+        ECKey ecKey = new ECKeyGenerator(Curve.P_256)
+                .keyID(UUID.randomUUID().toString())
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+        return JwtSigningKey.builder()
+                .kid(ecKey.getKeyID())
+                .jwk(ecKey.toJSONString())
+                .build();
+    }
+
+    public record SigningKey(String kid, JWSSigner signer) {
+    }
+
+    private record Keys(SigningKey signingKey, Map<String, JWSVerifier> verifiers, JWKSet publicKeys) {
+    }
+}
@@ -1,7 +1,6 @@
 package com.questify.api.config.security;
 
 import com.questify.api.exceptions.JwtCreationException;
-import com.questify.api.exceptions.JwtParseException;
 import com.questify.api.model.enums.UserType;
 import com.nimbusds.jose.*;
 import com.nimbusds.jose.crypto.MACSigner;
@@ -12,116 +11,177 @@ import com.nimbusds.jwt.SignedJWT;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.text.ParseException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Date;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Issues and verifies the access and refresh tokens.
+ *
+ * Tokens are signed HS256 with jwt.secret, or with jwt.algorithm=ES256 by the current key of the
+ * {@link JwtKeyRing}, whose public keys anyone can use to verify them. After switching to ES256,
+ * HS256 tokens are rejected unless jwt.accept-legacy-hs256=true; set it only for the transition,
+ * and turn it off again once the refresh tokens issued before the switch have expired (7 days).
+ *
+ * The HMAC signer and verifier are built once from jwt.secret. Tokens that passed verification are
+ * remembered by their SHA-256 hash in a small LRU cache until they expire, so the same token sent
+ * on every request of a session is parsed and HMAC-checked only once.
+ */
 @Component
 public class JwtService {
 
-    @Value("${jwt.secret}")
-    private String secret;
-
-    public String generateToken(long id, UserType role) {
-        try {
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.MINUTE, 60);
-
-            JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
-                    .subject(String.valueOf(id))
-                    .claim("role", role)
-                    .claim("type", "access")
-                    .expirationTime(cal.getTime())
-                    .build();
-
-            JWSHeader header = new JWSHeader(JWSAlgorithm.HS256);
-            SignedJWT signedJWT = new SignedJWT(header, claimsSet);
-            JWSSigner signer = new MACSigner(secret);
+    static final int REFRESH_TOKEN_DAYS = 7;
 
-            signedJWT.sign(signer);
-            return signedJWT.serialize();
+    private final JWSSigner signer;
+    private final JWSVerifier verifier;
+    private final JwtKeyRing keyRing;
+    private final int verifiedCacheSize;
+    private final boolean acceptLegacyHs256;
 
-        } catch (JOSEException e) {
-            throw new JwtCreationException("Failed to generate JWT access token", e);
+    // Access-ordered, so the least recently used token is evicted first
+    private final LinkedHashMap<String, VerifiedToken> verifiedTokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+            return size() > verifiedCacheSize;
         }
+    };
+
+    public JwtService(
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.verified-cache.max-entries:10000}") int verifiedCacheSize,
+            @Value("${jwt.accept-legacy-hs256:false}") boolean acceptLegacyHs256,
+            Optional<JwtKeyRing> keyRing
+    ) throws JOSEException {
+        this.signer = new MACSigner(secret);
+        this.verifier = new MACVerifier(secret);
+        this.keyRing = keyRing.orElse(null);
+        this.verifiedCacheSize = verifiedCacheSize;
+        this.acceptLegacyHs256 = acceptLegacyHs256;
     }
 
-    public String generateRefreshToken(long id, UserType role) {
-        try {
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.DAY_OF_MONTH, 7);
-
-            JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
-                    .subject(String.valueOf(id))
-                    .claim("role", role)
-                    .claim("type", "refresh")
-                    .expirationTime(cal.getTime())
-                    .build();
-
-            JWSHeader header = new JWSHeader(JWSAlgorithm.HS256);
-            SignedJWT signedJWT = new SignedJWT(header, claimsSet);
-            JWSSigner signer = new MACSigner(secret);
-
-            signedJWT.sign(signer);
-            return signedJWT.serialize();
+    public String generateToken(long id, UserType role, int tokenVersion) {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.MINUTE, 60);
+        return sign(id, role, tokenVersion, "access", cal.getTime(), "Failed to generate JWT access token");
+    }
 
-        } catch (JOSEException e) {
-            throw new JwtCreationException("Failed to generate JWT refresh token", e);
-        }
+    public String generateRefreshToken(long id, UserType role, int tokenVersion) {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_MONTH, REFRESH_TOKEN_DAYS);
+        return sign(id, role, tokenVersion, "refresh", cal.getTime(), "Failed to generate JWT refresh token");
     }
 
-    public boolean validateToken(String token) {
-        try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-            JWSVerifier verifier = new MACVerifier(secret);
-            return signedJWT.verify(verifier) && !isTokenExpired(signedJWT);
-        } catch (Exception e) {
-            return false;
+    /**
+     * Parse a token, check its signature and expiry, and return its claims
+     *
+     * @return Empty if the token is malformed, forged, expired or misses a required claim
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        String key = hash(token);
+
+        VerifiedToken cached;
+        synchronized (verifiedTokens) {
+            cached = verifiedTokens.get(key);
+        }
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return Optional.of(cached);
+            }
+            synchronized (verifiedTokens) {
+                verifiedTokens.remove(key);
+            }
+            return Optional.empty();
         }
-    }
 
-    private boolean isTokenExpired(SignedJWT signedJWT) {
-        try {
-            Date expirationTime = signedJWT.getJWTClaimsSet().getExpirationTime();
-            return expirationTime.before(new Date());
-        } catch (ParseException e) {
-            throw new JwtParseException("Failed to read expiration time from JWT", e);
+        VerifiedToken verified = parseAndVerify(token);
+        if (verified == null) {
+            return Optional.empty();
+        }
+        synchronized (verifiedTokens) {
+            verifiedTokens.put(key, verified);
         }
+        return Optional.of(verified);
     }
 
-    public String getSubject(String token) {
+    private VerifiedToken parseAndVerify(String token) {
         try {
             SignedJWT signedJWT = SignedJWT.parse(token);
-            return signedJWT.getJWTClaimsSet().getSubject();
-        } catch (ParseException e) {
-            throw new JwtParseException("Failed to parse JWT token", e);
+            JWSVerifier tokenVerifier = verifierFor(signedJWT.getHeader());
+            if (tokenVerifier == null || !signedJWT.verify(tokenVerifier)) {
+                return null;
+            }
+
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            Integer version = claims.getIntegerClaim("ver");
+            VerifiedToken verified = new VerifiedToken(
+                    claims.getJWTID(),
+                    Long.parseLong(claims.getSubject()),
+                    UserType.valueOf(claims.getStringClaim("role")),
+                    claims.getStringClaim("type"),
+                    version != null ? version : 0, // Tokens from before the claim existed
+                    claims.getExpirationTime()
+            );
+            return verified.isExpired() ? null : verified;
+        } catch (Exception e) {
+            // Malformed token, unknown role, missing subject or expiry
+            return null;
         }
     }
 
-    public UserType getRoleFromToken(String token) {
+    private String sign(long id, UserType role, int tokenVersion, String type, Date expiresAt, String failureMessage) {
         try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-            String role = signedJWT.getJWTClaimsSet().getStringClaim("role");
+            JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
+                    .jwtID(UUID.randomUUID().toString())
+                    .subject(String.valueOf(id))
+                    .claim("role", role)
+                    .claim("type", type)
+                    .claim("ver", tokenVersion)
+                    .expirationTime(expiresAt)
+                    .build();
 
-            if (role == null) {
-                throw new JwtParseException("JWT token missing 'role' claim", null);
+            SignedJWT signedJWT;
+            if (keyRing != null) {
+                JwtKeyRing.SigningKey signingKey = keyRing.signingKey();
+                signedJWT = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(signingKey.kid()).build(), claimsSet);
+                signedJWT.sign(signingKey.signer());
+            } else {
+                signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claimsSet);
+                signedJWT.sign(signer);
             }
+            return signedJWT.serialize();
 
-            return UserType.valueOf(role);
+        } catch (JOSEException e) {
+            throw new JwtCreationException(failureMessage, e);
+        }
+    }
 
-        } catch (ParseException e) {
-            throw new JwtParseException("Failed to parse role from JWT", e);
-        } catch (IllegalArgumentException e) {
-            throw new JwtParseException("Invalid role value inside JWT", e);
+    /**
+     * Pick the verifier from the header; the algorithm must match the key, so an ES256 public key
+     * can never be used as an HMAC secret
+     */
+    private JWSVerifier verifierFor(JWSHeader header) {
+        if (JWSAlgorithm.HS256.equals(header.getAlgorithm())) {
+            return keyRing == null || acceptLegacyHs256 ? verifier : null;
         }
+        if (JWSAlgorithm.ES256.equals(header.getAlgorithm()) && keyRing != null) {
+            return keyRing.verifier(header.getKeyID());
+        }
+        return null;
     }
 
-    public String getClaim(String token, String claim) {
+    private static String hash(String token) {
         try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-            return signedJWT.getJWTClaimsSet().getStringClaim(claim);
-        } catch (ParseException e) {
-            throw new JwtParseException("Failed to parse claim '" + claim + "' from JWT", e);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
-}
\ No newline at end of file
+}
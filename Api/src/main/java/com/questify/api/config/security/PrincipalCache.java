@@ -0,0 +1,76 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.User;
+import com.questify.api.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Short-lived LRU cache of authenticated users by id, shared by JwtAuthFilter (when not stateless)
+ * and /api/auth/me, so an active session does not load its user on every request.
+ *
+ * Entries expire after a few seconds to bound staleness across nodes; code that changes a user on
+ * this node evicts it right away. Cached users are detached and must be treated as read-only.
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    // Access-ordered, so the least recently used user is evicted first
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public PrincipalCache(
+            UserRepository userRepository,
+            @Value("${security.principal-cache.ttl-seconds:30}") long ttlSeconds,
+            @Value("${security.principal-cache.max-entries:10000}") int maxEntries
+    ) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = maxEntries;
+    }
+
+    public Optional<User> get(long userId) {
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(userId);
+        }
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt < ttlMillis) {
+            return Optional.of(cached.user);
+        }
+
+        // Load outside the lock so a slow query does not block hits for other users
+        Optional<User> loaded = userRepository.findById(userId);
+        synchronized (entries) {
+            if (loaded.isPresent()) {
+                entries.put(userId, new Entry(loaded.get(), System.currentTimeMillis()));
+            } else {
+                entries.remove(userId);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drop a user after a change to its password, role, status or profile
+     */
+    public void evict(Long userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+        }
+    }
+
+    private record Entry(User user, long loadedAt) {
+    }
+}
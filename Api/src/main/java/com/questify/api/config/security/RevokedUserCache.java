@@ -0,0 +1,89 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.User;
+import com.questify.api.model.enums.UserType;
+import com.questify.api.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The few users whose tokens must no longer be accepted, so JwtAuthFilter can trust the claims of
+ * every other token without loading the user.
+ *
+ * A user is listed with the lowest token version still valid: blacklisted users reject every
+ * version, users who bumped their tokenVersion reject tokens issued before. A bump only matters
+ * until the tokens it revoked have expired, so only recent bumps are loaded. The set is reloaded
+ * periodically to pick up changes made on another node or directly in the database.
+ *
+ * The set is loaded once the bean is created, before the server takes requests. Until a load has
+ * succeeded (e.g. the database was down at startup) every token counts as revoked.
+ */
+@Slf4j
+@Component
+public class RevokedUserCache {
+
+    private static final int ALL_VERSIONS = Integer.MAX_VALUE;
+    private static final Duration LONGEST_TOKEN_LIFETIME = Duration.ofDays(JwtService.REFRESH_TOKEN_DAYS).plusHours(1);
+
+    private final UserRepository userRepository;
+    private volatile Map<Long, Integer> minimumVersions; // null until loaded
+
+    public RevokedUserCache(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public boolean isRevoked(long userId, int tokenVersion) {
+        Map<Long, Integer> current = minimumVersions;
+        if (current == null) {
+            return true;
+        }
+        Integer minimumVersion = current.get(userId);
+        return minimumVersion != null && tokenVersion < minimumVersion;
+    }
+
+    /**
+     * Apply a change made on this node right away instead of waiting for the next reload
+     */
+    public void update(User user) {
+        Map<Long, Integer> current = minimumVersions;
+        if (current == null) {
+            // Not loaded yet; the first load reads the change from the database
+            return;
+        }
+        if (user.getUserType() == UserType.BLACKLISTED) {
+            current.put(user.getId(), ALL_VERSIONS);
+        } else if (user.getTokenVersion() > 0) {
+            current.put(user.getId(), user.getTokenVersion());
+        } else {
+            current.remove(user.getId());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Keep rejecting every token; the scheduled reload tries again
+            log.error("Failed to load users with revoked tokens, rejecting all tokens until loaded", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:60000}")
+    public void reload() {
+        Map<Long, Integer> loaded = new ConcurrentHashMap<>();
+        LocalDateTime changedAfter = LocalDateTime.now().minus(LONGEST_TOKEN_LIFETIME);
+        for (User user : userRepository.findByTokenVersionChangedAtAfterOrUserType(changedAfter, UserType.BLACKLISTED)) {
+            loaded.put(user.getId(), user.getUserType() == UserType.BLACKLISTED ? ALL_VERSIONS : user.getTokenVersion());
+        }
+        minimumVersions = loaded;
+        log.debug("Loaded {} users with revoked tokens", loaded.size());
+    }
+}
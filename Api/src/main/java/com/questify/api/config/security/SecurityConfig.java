@@ -1,24 +1,31 @@
 package com.questify.api.config.security;
 
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.header.writers.StaticHeadersWriter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
+import java.util.function.Supplier;
 
 @Configuration
 @EnableWebSecurity
@@ -28,6 +35,10 @@ public class SecurityConfig {
     @Value("${frontend.url}")
     private String frontendUrl;
 
+    // Bearer token for the Prometheus scraper; empty = only admins can read metrics
+    @Value("${metrics.scrape-token:}")
+    private String scrapeToken;
+
     private final JwtAuthFilter jwtAuthFilter;
 
     public SecurityConfig(JwtAuthFilter jwtAuthFilter) {
@@ -79,7 +90,10 @@ public class SecurityConfig {
                         )
                 )
                 .authorizeHttpRequests(auth -> auth
+                        // Async dispatches (SSE streams) belong to a request that was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/actuator/health").anonymous()
+                        .requestMatchers("/actuator/prometheus").access(this::canScrapeMetrics)
                         .requestMatchers(
                                 "/api/users/email-confirm",
                                 "/api/auth/register",
@@ -87,6 +101,7 @@ public class SecurityConfig {
                                 "/api/auth/refresh",
                                 "/api/auth/activate",
                                 "/api/auth/reset-password/**",
+                                "/.well-known/jwks.json",
                                 "/v3/api-docs/**",
                                 "/swagger-ui.html",
                                 "/swagger-ui/**"
@@ -106,4 +121,17 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    private AuthorizationDecision canScrapeMetrics(Supplier<? extends Authentication> authentication, RequestAuthorizationContext context) {
+        String header = context.getRequest().getHeader("Authorization");
+        boolean validToken = !scrapeToken.isEmpty() && header != null && MessageDigest.isEqual(
+                header.getBytes(StandardCharsets.UTF_8),
+                ("Bearer " + scrapeToken).getBytes(StandardCharsets.UTF_8));
+
+        Authentication user = authentication.get();
+        boolean admin = user != null && user.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+
+        return new AuthorizationDecision(validToken || admin);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.RevokedToken;
+import com.questify.api.repository.RevokedTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Individually revoked tokens, keyed by their jti claim.
+ *
+ * Revocations are stored in the revoked_tokens table; every node keeps a Bloom filter of the
+ * unexpired ones in memory. Almost every token is not in the filter, so checking it costs a few bit
+ * lookups and no database access. Only filter hits are confirmed against the table, and remembered
+ * until the next reload. The filter is rebuilt periodically to pick up revocations from other nodes.
+ */
+@Slf4j
+@Component
+public class TokenRevocationList {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final int expectedTokens;
+
+    private volatile BloomFilter filter;
+    private volatile Map<String, Boolean> confirmed = new ConcurrentHashMap<>();
+
+    // Revoked on this node since the last reload started; re-added so a concurrent rebuild cannot drop them
+    private final Queue<String> recentlyRevoked = new ConcurrentLinkedQueue<>();
+
+    public TokenRevocationList(
+            RevokedTokenRepository revokedTokenRepository,
+            @Value("${jwt.revocation.expected-tokens:100000}") int expectedTokens
+    ) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedTokens = expectedTokens;
+        this.filter = new BloomFilter(expectedTokens, FALSE_POSITIVE_RATE);
+    }
+
+    public boolean isRevoked(VerifiedToken token) {
+        String jti = token.tokenId();
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+
+        Boolean revoked = confirmed.get(jti);
+        if (revoked == null) {
+            revoked = revokedTokenRepository.existsByJti(jti);
+            confirmed.put(jti, revoked);
+        }
+        return revoked;
+    }
+
+    /**
+     * Reject a token from now on, until it expires
+     */
+    public void revoke(VerifiedToken token) {
+        String jti = token.tokenId();
+        if (jti == null) {
+            // Issued before tokens had an id; revoking the user's tokenVersion is the only option
+            return;
+        }
+
+        try {
+            revokedTokenRepository.save(RevokedToken.builder()
+                    .jti(jti)
+                    .expiresAt(LocalDateTime.ofInstant(token.expiresAt().toInstant(), ZoneId.systemDefault()))
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Already revoked, e.g. a logout sent twice
+            log.debug("Token {} was already revoked", jti);
+        }
+
+        filter.add(jti);
+        confirmed.put(jti, true);
+        recentlyRevoked.add(jti);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:60000}")
+    public void reload() {
+        List<String> carried = new ArrayList<>();
+        for (String jti; (jti = recentlyRevoked.poll()) != null; ) {
+            carried.add(jti);
+        }
+
+        List<String> jtis = revokedTokenRepository.findUnexpiredJtis(LocalDateTime.now());
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedTokens, jtis.size() * 2), FALSE_POSITIVE_RATE);
+        jtis.forEach(rebuilt::add);
+        carried.forEach(rebuilt::add);
+
+        filter = rebuilt;
+        confirmed = new ConcurrentHashMap<>();
+        recentlyRevoked.forEach(rebuilt::add);
+
+        log.debug("Loaded {} revoked tokens", jtis.size());
+    }
+
+    /**
+     * Every night at 04:45 (Europe/Brussels) — drop revocations of tokens that have expired anyway
+     */
+    @Scheduled(cron = "0 45 4 * * *", zone = "Europe/Brussels")
+    @Transactional
+    public void purgeExpired() {
+        int purged = revokedTokenRepository.deleteExpired(LocalDateTime.now());
+        log.info("Purged {} expired token revocations", purged);
+    }
+}
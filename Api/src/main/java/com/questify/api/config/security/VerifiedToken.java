@@ -0,0 +1,27 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.enums.UserType;
+
+import java.util.Date;
+
+/**
+ * Claims of a JWT whose signature and expiry were checked by {@link JwtService#verify}
+ *
+ * @param tokenId      jti claim, null for tokens issued before tokens had an id
+ * @param type         "access" or "refresh"
+ * @param tokenVersion User's tokenVersion when the token was issued
+ */
+public record VerifiedToken(String tokenId, long userId, UserType role, String type, int tokenVersion, Date expiresAt) {
+
+    public boolean isAccessToken() {
+        return "access".equals(type);
+    }
+
+    public boolean isRefreshToken() {
+        return "refresh".equals(type);
+    }
+
+    public boolean isExpired() {
+        return expiresAt.before(new Date());
+    }
+}
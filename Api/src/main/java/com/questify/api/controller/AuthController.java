@@ -1,6 +1,7 @@
 package com.questify.api.controller;
 
 import com.questify.api.annotations.*;
+import com.questify.api.config.security.PrincipalCache;
 import com.questify.api.repository.*;
 import com.questify.api.dto.request.*;
 import com.questify.api.dto.response.AuthResponseDTO;
@@ -12,7 +13,6 @@ import jakarta.servlet.http.*;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.*;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
@@ -30,6 +30,7 @@ public class AuthController {
     private final UserRepository userRepository;
     private final ResetPasswordRepository resetPasswordRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
 
     @AllowAnonymous
     @PostMapping("/register")
@@ -66,7 +67,7 @@ public class AuthController {
         Cookie refreshTokenCookie = new Cookie("refreshToken", auth.getRefreshToken());
         refreshTokenCookie.setHttpOnly(true);
         refreshTokenCookie.setSecure(true);
-        refreshTokenCookie.setPath("/api/auth/refresh");
+        refreshTokenCookie.setPath("/api/auth"); // Sent to /refresh and /logout
         refreshTokenCookie.setMaxAge(7 * 24 * 60 * 60);
         response.addCookie(refreshTokenCookie);
 
@@ -75,7 +76,13 @@ public class AuthController {
 
     @AllowAnonymous
     @PostMapping("/logout")
-    public ResponseEntity<AuthResponseDTO> logout(HttpServletResponse response) {
+    public ResponseEntity<AuthResponseDTO> logout(HttpServletRequest request, HttpServletResponse response) {
+        String authHeader = request.getHeader("Authorization");
+        String accessToken = authHeader != null && authHeader.startsWith("Bearer ")
+                ? authHeader.substring(7)
+                : authService.getCookieValue(request, "accessToken");
+        authService.logout(accessToken, authService.getCookieValue(request, "refreshToken"));
+
         Cookie accessTokenCookie = new Cookie("accessToken", null);
         accessTokenCookie.setHttpOnly(true);
         accessTokenCookie.setSecure(true);
@@ -86,17 +93,26 @@ public class AuthController {
         Cookie refreshTokenCookie = new Cookie("refreshToken", null);
         refreshTokenCookie.setHttpOnly(true);
         refreshTokenCookie.setSecure(true);
-        refreshTokenCookie.setPath("/api/auth/refresh");
+        refreshTokenCookie.setPath("/api/auth");
         refreshTokenCookie.setMaxAge(0);
         response.addCookie(refreshTokenCookie);
 
+        // Refresh cookies set before the path was widened
+        Cookie legacyRefreshTokenCookie = new Cookie("refreshToken", null);
+        legacyRefreshTokenCookie.setHttpOnly(true);
+        legacyRefreshTokenCookie.setSecure(true);
+        legacyRefreshTokenCookie.setPath("/api/auth/refresh");
+        legacyRefreshTokenCookie.setMaxAge(0);
+        response.addCookie(legacyRefreshTokenCookie);
+
         return ResponseEntity.ok().build();
     }
 
     @AllowAnonymous
     @GetMapping("/me")
-    public ResponseEntity<UserDTO> getCurrentUser(@AuthenticationPrincipal UserDetails userDetails) {
-        Optional<User> optionalUser = userRepository.findByEmail(userDetails.getUsername());
+    public ResponseEntity<UserDTO> getCurrentUser(@AuthenticationPrincipal User principal) {
+        // The principal may only carry the token claims, load the profile by id
+        Optional<User> optionalUser = principal != null ? principalCache.get(principal.getId()) : Optional.empty();
 
         if (optionalUser.isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -140,6 +156,9 @@ public class AuthController {
         userRepository.save(user);
         resetPasswordRepository.delete(token);
 
+        // Someone may have had access to the account, sign out every session
+        authService.revokeTokens(user.getId());
+
         return ResponseEntity.ok("Password updated");
     }
 
@@ -155,6 +174,7 @@ public class AuthController {
         user.setEnabled(true);
         user.setActivationToken(null);
         userRepository.save(user);
+        principalCache.evict(user.getId());
 
         return ResponseEntity.ok("Account activated!");
     }
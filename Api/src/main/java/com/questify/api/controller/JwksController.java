@@ -0,0 +1,39 @@
+package com.questify.api.controller;
+
+import com.questify.api.annotations.AllowAnonymous;
+import com.questify.api.config.security.JwtKeyRing;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Public keys to verify our JWTs with, e.g. at the edge proxy. Empty when tokens are signed HS256.
+ */
+@RestController
+public class JwksController {
+
+    private final Optional<JwtKeyRing> keyRing;
+
+    public JwksController(Optional<JwtKeyRing> keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @AllowAnonymous
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> getJwks() {
+        Map<String, Object> jwks = keyRing
+                .map(ring -> ring.publicKeys().toJSONObject(true))
+                .orElseGet(() -> Map.of("keys", List.of()));
+
+        // New keys are published well before they are used, so verifiers may cache for a while
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(jwks);
+    }
+}
@@ -2,14 +2,21 @@ package com.questify.api.controller;
 
 import com.questify.api.annotations.AllowAuthenticated;
 import com.questify.api.dto.response.ImageVerificationResponseDTO;
+import com.questify.api.dto.response.ScanJobDTO;
 import com.questify.api.model.User;
+import com.questify.api.services.implementation.PaintingIdentificationService;
 import com.questify.api.services.implementation.PaintingVerificationService;
+import com.questify.api.services.implementation.ScanJobService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
 
 @RestController
 @RequestMapping("/api/verify")
@@ -17,6 +24,8 @@ import org.springframework.web.multipart.MultipartFile;
 public class PaintingVerificationController {
 
     private final PaintingVerificationService verificationService;
+    private final PaintingIdentificationService identificationService;
+    private final ScanJobService scanJobService;
 
     /**
      * POST /api/verify/routes/{routeId}/paintings/{paintingId}
@@ -33,6 +42,7 @@ public class PaintingVerificationController {
      * - confidenceScore: Match quality (0.0 - 1.0)
      * - message: User-friendly message
      * - paintingDetails: Full painting info (only if match = true)
+     * - 503 with a Retry-After header when the matcher is too busy, like the async endpoint
      *
      * Flow:
      * 1. Validates user is on correct stop in route
@@ -50,7 +60,7 @@ public class PaintingVerificationController {
             @PathVariable Long paintingId,
             @RequestParam("image") MultipartFile userImage,
             @AuthenticationPrincipal User user
-    ) {
+    ) throws IOException {
 
         // Validate file
         if (userImage.isEmpty()) {
@@ -68,9 +78,116 @@ public class PaintingVerificationController {
                 user.getId(),
                 routeId,
                 paintingId,
-                userImage
+                userImage.getBytes()
         );
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * POST /api/verify/routes/{routeId}/paintings/{paintingId}/jobs
+     *
+     * Async variant of the scan endpoint: returns 202 with a job id right away,
+     * the verification runs in the background.
+     *
+     * Follow up with:
+     * - GET /api/verify/jobs/{jobId}: poll the job until status = COMPLETED
+     * - GET /api/verify/jobs/{jobId}/events: server-sent "status" events, ends after COMPLETED
+     *
+     * The result of a completed job is the same response as the synchronous endpoint.
+     */
+    @AllowAuthenticated
+    @PostMapping(
+            value = "/routes/{routeId}/paintings/{paintingId}/jobs",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE
+    )
+    public ResponseEntity<?> submitVerification(
+            @PathVariable Long routeId,
+            @PathVariable Long paintingId,
+            @RequestParam("image") MultipartFile userImage,
+            @AuthenticationPrincipal User user
+    ) throws IOException {
+
+        // Same error body as the synchronous endpoint
+        if (userImage.isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    ImageVerificationResponseDTO.builder()
+                            .isMatch(false)
+                            .confidenceScore(0.0)
+                            .message("No image provided")
+                            .build()
+            );
+        }
+
+        ScanJobDTO job = scanJobService.submit(user.getId(), routeId, paintingId, userImage.getBytes());
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/verify/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    /**
+     * GET /api/verify/jobs/{jobId}
+     *
+     * Poll an async scan; result is filled in once status = COMPLETED
+     */
+    @AllowAuthenticated
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ScanJobDTO> getVerificationJob(
+            @PathVariable String jobId,
+            @AuthenticationPrincipal User user
+    ) {
+        return ResponseEntity.ok(scanJobService.getJob(jobId, user.getId()));
+    }
+
+    /**
+     * GET /api/verify/jobs/{jobId}/events
+     *
+     * Server-sent events for an async scan: one "status" event per state change
+     * (QUEUED, PROCESSING, COMPLETED), the last one carrying the result
+     */
+    @AllowAuthenticated
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamVerificationJob(
+            @PathVariable String jobId,
+            @AuthenticationPrincipal User user
+    ) {
+        return scanJobService.subscribe(jobId, user.getId());
+    }
+
+    /**
+     * POST /api/verify/museums/{museumId}/identify
+     *
+     * "What am I looking at?": identify which painting of a museum a photo shows,
+     * without the user being on a route. Does not change any route progress.
+     *
+     * Response:
+     * - isMatch: true if a painting was identified
+     * - confidenceScore: Match quality of the best candidate (0.0 - 1.0)
+     * - message: User-friendly message
+     * - paintingDetails: Full painting info (only if match = true)
+     * - 503 with a Retry-After header when the matcher is too busy
+     */
+    @AllowAuthenticated
+    @PostMapping(
+            value = "/museums/{museumId}/identify",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE
+    )
+    public ResponseEntity<ImageVerificationResponseDTO> identifyPainting(
+            @PathVariable Long museumId,
+            @RequestParam("image") MultipartFile userImage
+    ) {
+
+        if (userImage.isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    ImageVerificationResponseDTO.builder()
+                            .isMatch(false)
+                            .confidenceScore(0.0)
+                            .message("No image provided")
+                            .build()
+            );
+        }
+
+        return ResponseEntity.ok(identificationService.identifyPainting(museumId, userImage));
+    }
 }
\ No newline at end of file
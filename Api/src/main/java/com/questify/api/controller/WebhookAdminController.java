@@ -2,10 +2,15 @@ package com.questify.api.controller;
 
 import com.questify.api.annotations.AllowAdmin;
 import com.questify.api.dto.request.CreateWebhookSubscriptionDTO;
+import com.questify.api.dto.response.WebhookDeliveryDTO;
 import com.questify.api.dto.response.WebhookSubscriptionDTO;
+import com.questify.api.model.WebhookDelivery;
 import com.questify.api.model.WebhookSubscription;
+import com.questify.api.model.enums.WebhookDeliveryStatus;
 import com.questify.api.repository.WebhookSubscriptionRepository;
 import com.questify.api.services.implementation.WebhookService;
+import com.questify.api.services.implementation.WebhookSubscriptionRegistry;
+import com.questify.api.util.SecureTokens;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -23,6 +28,7 @@ public class WebhookAdminController {
 
     private final WebhookSubscriptionRepository subscriptionRepository;
     private final WebhookService webhookService;
+    private final WebhookSubscriptionRegistry subscriptionRegistry;
 
     @GetMapping
     public List<WebhookSubscriptionDTO> getAll() {
@@ -37,16 +43,43 @@ public class WebhookAdminController {
                 .url(dto.getUrl())
                 .eventType(dto.getEventType())
                 .description(dto.getDescription())
+                .connectTimeoutMs(dto.getConnectTimeoutMs())
+                .readTimeoutMs(dto.getReadTimeoutMs())
+                .batchWindowSeconds(dto.getBatchWindowSeconds())
+                .batchMaxEvents(dto.getBatchMaxEvents())
+                .coalesceEvents(dto.isCoalesceEvents())
+                .secret(SecureTokens.generate())
                 .active(true)
                 .build();
 
         subscription = subscriptionRepository.save(subscription);
-        return ResponseEntity.status(HttpStatus.CREATED).body(toDTO(subscription));
+        subscriptionRegistry.refresh();
+
+        WebhookSubscriptionDTO created = toDTO(subscription);
+        created.setSecret(subscription.getSecret());
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    }
+
+    /**
+     * Replace the signing secret, e.g. for subscriptions created before payloads were signed
+     */
+    @PostMapping("/{id}/rotate-secret")
+    public ResponseEntity<WebhookSubscriptionDTO> rotateSecret(@PathVariable Long id) {
+        WebhookSubscription subscription = subscriptionRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Webhook subscription not found"));
+        subscription.setSecret(SecureTokens.generate());
+        subscription = subscriptionRepository.save(subscription);
+        subscriptionRegistry.refresh();
+
+        WebhookSubscriptionDTO rotated = toDTO(subscription);
+        rotated.setSecret(subscription.getSecret());
+        return ResponseEntity.ok(rotated);
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
         subscriptionRepository.deleteById(id);
+        subscriptionRegistry.refresh();
         return ResponseEntity.noContent().build();
     }
 
@@ -55,7 +88,9 @@ public class WebhookAdminController {
         WebhookSubscription subscription = subscriptionRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Webhook subscription not found"));
         subscription.setActive(false);
-        return ResponseEntity.ok(toDTO(subscriptionRepository.save(subscription)));
+        subscription = subscriptionRepository.save(subscription);
+        subscriptionRegistry.refresh();
+        return ResponseEntity.ok(toDTO(subscription));
     }
 
     @PostMapping("/{id}/activate")
@@ -63,7 +98,9 @@ public class WebhookAdminController {
         WebhookSubscription subscription = subscriptionRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Webhook subscription not found"));
         subscription.setActive(true);
-        return ResponseEntity.ok(toDTO(subscriptionRepository.save(subscription)));
+        subscription = subscriptionRepository.save(subscription);
+        subscriptionRegistry.refresh();
+        return ResponseEntity.ok(toDTO(subscription));
     }
 
     @PostMapping("/{id}/test")
@@ -74,6 +111,50 @@ public class WebhookAdminController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Outbox deliveries, newest first; filter on status=DEAD to see what needs attention
+     */
+    @GetMapping("/deliveries")
+    public List<WebhookDeliveryDTO> getDeliveries(
+            @RequestParam(required = false) WebhookDeliveryStatus status,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        return webhookService.getDeliveries(status, Math.min(Math.max(limit, 1), 1000)).stream()
+                .map(this::toDTO)
+                .toList();
+    }
+
+    @GetMapping("/deliveries/{id}")
+    public WebhookDeliveryDTO getDelivery(@PathVariable Long id) {
+        return toDTO(webhookService.getDelivery(id));
+    }
+
+    @PostMapping("/deliveries/{id}/replay")
+    public ResponseEntity<WebhookDeliveryDTO> replayDelivery(@PathVariable Long id) {
+        return ResponseEntity.ok(toDTO(webhookService.replay(id)));
+    }
+
+    @PostMapping("/deliveries/replay-dead")
+    public ResponseEntity<Map<String, Object>> replayDeadDeliveries() {
+        return ResponseEntity.ok(Map.of("replayed", webhookService.replayDead()));
+    }
+
+    private WebhookDeliveryDTO toDTO(WebhookDelivery d) {
+        return WebhookDeliveryDTO.builder()
+                .id(d.getId())
+                .subscriptionId(d.getSubscriptionId())
+                .eventType(d.getEventType())
+                .payload(d.getPayload())
+                .status(d.getStatus())
+                .attempts(d.getAttempts())
+                .nextAttemptAt(d.getNextAttemptAt())
+                .lastStatusCode(d.getLastStatusCode())
+                .lastError(d.getLastError())
+                .createdAt(d.getCreatedAt())
+                .deliveredAt(d.getDeliveredAt())
+                .build();
+    }
+
     private WebhookSubscriptionDTO toDTO(WebhookSubscription s) {
         return WebhookSubscriptionDTO.builder()
                 .id(s.getId())
@@ -81,6 +162,11 @@ public class WebhookAdminController {
                 .eventType(s.getEventType())
                 .description(s.getDescription())
                 .active(s.isActive())
+                .connectTimeoutMs(s.getConnectTimeoutMs())
+                .readTimeoutMs(s.getReadTimeoutMs())
+                .batchWindowSeconds(s.getBatchWindowSeconds())
+                .batchMaxEvents(s.getBatchMaxEvents())
+                .coalesceEvents(s.isCoalesceEvents())
                 .createdAt(s.getCreatedAt())
                 .build();
     }
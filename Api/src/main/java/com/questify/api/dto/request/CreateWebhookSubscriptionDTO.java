@@ -1,8 +1,11 @@
 package com.questify.api.dto.request;
 
 import com.questify.api.model.enums.WebhookEventType;
+import com.questify.api.services.implementation.WebhookService;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 import org.hibernate.validator.constraints.URL;
 
@@ -17,4 +20,22 @@ public class CreateWebhookSubscriptionDTO {
     private WebhookEventType eventType;
 
     private String description;
+
+    @Positive
+    @Max(WebhookService.MAX_CONNECT_TIMEOUT_MS)
+    private Integer connectTimeoutMs; // Optional, defaults to webhook.http.connect-timeout-ms
+
+    @Positive
+    @Max(WebhookService.MAX_READ_TIMEOUT_MS)
+    private Integer readTimeoutMs; // Optional, defaults to webhook.http.read-timeout-ms
+
+    @Positive
+    @Max(3600)
+    private Integer batchWindowSeconds; // Optional, buffer events and deliver them as one JSON array
+
+    @Positive
+    @Max(500)
+    private Integer batchMaxEvents; // Optional, deliver a batch early once it holds this many events
+
+    private boolean coalesceEvents; // Merge redundant events within a batch
 }
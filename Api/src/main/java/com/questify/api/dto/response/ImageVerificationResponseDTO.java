@@ -1,5 +1,6 @@
 package com.questify.api.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 
 @Data
@@ -7,8 +8,10 @@ import lombok.*;
 @NoArgsConstructor
 @AllArgsConstructor
 public class ImageVerificationResponseDTO {
+    @JsonProperty("match") // Also binds the constructor parameter, so stored results read back
     private boolean isMatch;
     private double confidenceScore;
     private String message;
     private PaintingDetailDTO paintingDetails; // Only returned if match = true
+    private Integer retryAfterSeconds; // Only returned when the server is too busy to verify
 }
\ No newline at end of file
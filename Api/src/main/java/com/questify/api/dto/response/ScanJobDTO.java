@@ -0,0 +1,16 @@
+package com.questify.api.dto.response;
+
+import com.questify.api.model.enums.ScanJobStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class ScanJobDTO {
+    private String jobId;
+    private ScanJobStatus status;
+    private ImageVerificationResponseDTO result; // Only returned once status = COMPLETED
+    private LocalDateTime createdAt;
+}
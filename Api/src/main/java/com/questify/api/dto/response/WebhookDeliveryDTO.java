@@ -0,0 +1,24 @@
+package com.questify.api.dto.response;
+
+import com.questify.api.model.enums.WebhookDeliveryStatus;
+import com.questify.api.model.enums.WebhookEventType;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class WebhookDeliveryDTO {
+    private Long id;
+    private Long subscriptionId;
+    private WebhookEventType eventType;
+    private String payload;
+    private WebhookDeliveryStatus status;
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+    private Integer lastStatusCode;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime deliveredAt;
+}
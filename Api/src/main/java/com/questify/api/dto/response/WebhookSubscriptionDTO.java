@@ -14,5 +14,11 @@ public class WebhookSubscriptionDTO {
     private WebhookEventType eventType;
     private String description;
     private boolean active;
+    private Integer connectTimeoutMs;
+    private Integer readTimeoutMs;
+    private Integer batchWindowSeconds;
+    private Integer batchMaxEvents;
+    private boolean coalesceEvents;
+    private String secret; // Only returned when created or rotated
     private LocalDateTime createdAt;
 }
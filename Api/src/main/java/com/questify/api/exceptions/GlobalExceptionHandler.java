@@ -1,8 +1,10 @@
 package com.questify.api.exceptions;
 
 import com.questify.api.dto.response.AuthResponseDTO;
+import com.questify.api.dto.response.ImageVerificationResponseDTO;
 import com.nimbusds.jose.JOSEException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -90,6 +92,19 @@ public class GlobalExceptionHandler {
                 .body(ex.getMessage());
     }
 
+    @ExceptionHandler(ImageMatchingBusyException.class)
+    public ResponseEntity<ImageVerificationResponseDTO> handleImageMatchingBusy(ImageMatchingBusyException ex) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ImageVerificationResponseDTO.builder()
+                        .isMatch(false)
+                        .confidenceScore(0.0)
+                        .message(ex.getMessage())
+                        .retryAfterSeconds(ex.getRetryAfterSeconds())
+                        .build());
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException ex) {
         return ResponseEntity
@@ -0,0 +1,15 @@
+package com.questify.api.exceptions;
+
+public class ImageMatchingBusyException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public ImageMatchingBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
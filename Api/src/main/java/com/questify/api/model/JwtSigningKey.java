@@ -0,0 +1,34 @@
+package com.questify.api.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * ES256 key pair used to sign JWTs, shared by all nodes. Holds the private key: protect access
+ * to this table like jwt.secret.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "jwt_signing_keys")
+public class JwtSigningKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 36)
+    private String kid;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String jwk; // Private JWK as JSON
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+}
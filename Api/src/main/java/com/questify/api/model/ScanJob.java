@@ -0,0 +1,43 @@
+package com.questify.api.model;
+
+import com.questify.api.model.enums.ScanJobStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of an asynchronous scan verification.
+ *
+ * The job runs on the node that accepted the upload, but its state lives here so the client can
+ * poll or stream it through any node. Rows are only needed until the result has been picked up.
+ */
+@Entity
+@Table(
+        name = "scan_jobs",
+        indexes = @Index(name = "idx_scan_job_created", columnList = "created_at")
+)
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class ScanJob {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ScanJobStatus status;
+
+    @Column(columnDefinition = "TEXT")
+    private String result; // ImageVerificationResponseDTO as JSON, once COMPLETED
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+}
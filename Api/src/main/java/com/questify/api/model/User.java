@@ -61,6 +61,12 @@ public class User implements UserDetails {
     @Column(unique = true)
     private String activationToken;
 
+    @Builder.Default
+    @Column(nullable = false)
+    private int tokenVersion = 0; // Bumped to revoke every token issued before
+
+    private LocalDateTime tokenVersionChangedAt;
+
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime createdAt;
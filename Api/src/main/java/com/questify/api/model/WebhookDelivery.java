@@ -0,0 +1,66 @@
+package com.questify.api.model;
+
+import com.questify.api.model.enums.WebhookDeliveryStatus;
+import com.questify.api.model.enums.WebhookEventType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row: one webhook event to deliver to one subscription.
+ *
+ * Written in the same transaction as the change that triggered the event, then delivered
+ * (and retried) by the WebhookDispatcher.
+ */
+@Entity
+@Table(
+        name = "webhook_deliveries",
+        indexes = {
+                @Index(name = "idx_webhook_delivery_due", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_webhook_delivery_subscription", columnList = "subscription_id")
+        }
+)
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class WebhookDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // No foreign key: deleting a subscription must not be blocked by its delivery history
+    @Column(name = "subscription_id", nullable = false)
+    private Long subscriptionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WebhookEventType eventType;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WebhookDeliveryStatus status;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    private Integer lastStatusCode;
+
+    @Column(length = 1024)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime deliveredAt;
+}
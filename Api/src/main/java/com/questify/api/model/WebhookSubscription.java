@@ -33,6 +33,25 @@ public class WebhookSubscription {
     @Column(nullable = false)
     private boolean active = true;
 
+    @Column(length = 64)
+    private String secret; // HMAC key for X-Questify-Signature, null = unsigned
+
+    private Integer connectTimeoutMs; // null = webhook.http.connect-timeout-ms
+
+    private Integer readTimeoutMs; // null = webhook.http.read-timeout-ms
+
+    private Integer batchWindowSeconds; // null or 0 = deliver every event on its own
+
+    private Integer batchMaxEvents; // null = webhook.batch.max-events
+
+    @Builder.Default
+    @Column(nullable = false)
+    private boolean coalesceEvents = false;
+
+    public boolean isBatching() {
+        return batchWindowSeconds != null && batchWindowSeconds > 0;
+    }
+
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime createdAt;
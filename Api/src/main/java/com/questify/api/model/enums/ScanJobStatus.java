@@ -0,0 +1,7 @@
+package com.questify.api.model.enums;
+
+public enum ScanJobStatus {
+    QUEUED,
+    PROCESSING,
+    COMPLETED
+}
@@ -0,0 +1,7 @@
+package com.questify.api.model.enums;
+
+public enum WebhookDeliveryStatus {
+    PENDING,
+    DELIVERED,
+    DEAD
+}
@@ -0,0 +1,10 @@
+package com.questify.api.repository;
+
+import com.questify.api.model.JwtSigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface JwtSigningKeyRepository extends JpaRepository<JwtSigningKey, Long> {
+    List<JwtSigningKey> findAllByOrderByCreatedAtAsc();
+}
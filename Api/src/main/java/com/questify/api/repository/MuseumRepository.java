@@ -12,6 +12,9 @@ import java.util.Optional;
 public interface MuseumRepository extends JpaRepository<Museum, Long> {
     List<Museum> findByIsActiveTrue();
 
+    @Query("SELECT m.museumId FROM Museum m")
+    List<Long> findAllIds();
+
     @Query("SELECT DISTINCT m FROM Museum m LEFT JOIN FETCH m.routes")
     List<Museum> findAllWithRoutes();
 
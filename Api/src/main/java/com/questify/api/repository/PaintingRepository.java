@@ -19,4 +19,13 @@ public interface PaintingRepository extends JpaRepository<Painting, Long> {
 
     @Query("SELECT DISTINCT p FROM Painting p LEFT JOIN FETCH p.hints WHERE p.museum.museumId = :museumId")
     List<Painting> findAllByMuseumIdWithHints(Long museumId);
+
+    @Query("SELECT p.paintingId AS paintingId, p.imageRecognitionKey AS imageRecognitionKey FROM Painting p " +
+            "WHERE p.museum.museumId = :museumId AND p.imageRecognitionKey IS NOT NULL")
+    List<RecognitionKey> findRecognitionKeysByMuseumId(@Param("museumId") Long museumId);
+
+    interface RecognitionKey {
+        Long getPaintingId();
+        String getImageRecognitionKey();
+    }
 }
\ No newline at end of file
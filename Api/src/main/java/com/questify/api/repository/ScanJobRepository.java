@@ -0,0 +1,17 @@
+package com.questify.api.repository;
+
+import com.questify.api.model.ScanJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface ScanJobRepository extends JpaRepository<ScanJob, String> {
+
+    // Unfinished jobs that old belonged to a node that went down and will never complete
+    @Modifying
+    @Query("DELETE FROM ScanJob j WHERE j.completedAt < :cutoff OR (j.completedAt IS NULL AND j.createdAt < :cutoff)")
+    int deleteExpired(@Param("cutoff") LocalDateTime cutoff);
+}
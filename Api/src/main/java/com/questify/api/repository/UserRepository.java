@@ -1,11 +1,15 @@
 package com.questify.api.repository;
 
 import com.questify.api.model.User;
+import com.questify.api.model.enums.UserType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     Optional<User> findByActivationToken(String token);
     boolean existsByEmail(String email);
+    List<User> findByTokenVersionChangedAtAfterOrUserType(LocalDateTime changedAfter, UserType userType);
 }
\ No newline at end of file
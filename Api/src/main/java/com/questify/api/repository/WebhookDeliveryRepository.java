@@ -0,0 +1,60 @@
+package com.questify.api.repository;
+
+import com.questify.api.model.WebhookDelivery;
+import com.questify.api.model.enums.WebhookDeliveryStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface WebhookDeliveryRepository extends JpaRepository<WebhookDelivery, Long> {
+
+    // Due deliveries, locked with SKIP LOCKED so several nodes can drain the outbox without double delivery
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT d FROM WebhookDelivery d " +
+           "WHERE d.status = com.questify.api.model.enums.WebhookDeliveryStatus.PENDING " +
+           "AND d.nextAttemptAt <= :now ORDER BY d.nextAttemptAt")
+    List<WebhookDelivery> findDueForUpdate(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Queued deliveries of batching subscriptions that are not due yet but travel with a due batch.
+    // Never-claimed rows only: leased rows are being sent elsewhere and retries must wait for their backoff
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT d FROM WebhookDelivery d " +
+           "WHERE d.status = com.questify.api.model.enums.WebhookDeliveryStatus.PENDING " +
+           "AND d.attempts = 0 AND d.subscriptionId IN :subscriptionIds ORDER BY d.id")
+    List<WebhookDelivery> findPendingForUpdate(@Param("subscriptionIds") Collection<Long> subscriptionIds, Pageable pageable);
+
+    @Query("SELECT COUNT(d) FROM WebhookDelivery d " +
+           "WHERE d.status = com.questify.api.model.enums.WebhookDeliveryStatus.PENDING " +
+           "AND d.attempts = 0 AND d.subscriptionId IN :subscriptionIds")
+    long countQueued(@Param("subscriptionIds") Collection<Long> subscriptionIds);
+
+    @Modifying
+    @Query("UPDATE WebhookDelivery d SET d.nextAttemptAt = :now " +
+           "WHERE d.status = com.questify.api.model.enums.WebhookDeliveryStatus.PENDING " +
+           "AND d.attempts = 0 AND d.subscriptionId IN :subscriptionIds")
+    int makeQueuedDue(@Param("subscriptionIds") Collection<Long> subscriptionIds, @Param("now") LocalDateTime now);
+
+    List<WebhookDelivery> findByStatusOrderByIdDesc(WebhookDeliveryStatus status, Pageable pageable);
+
+    List<WebhookDelivery> findAllByOrderByIdDesc(Pageable pageable);
+
+    List<WebhookDelivery> findByStatus(WebhookDeliveryStatus status);
+
+    @Modifying
+    @Query("DELETE FROM WebhookDelivery d " +
+           "WHERE d.status = com.questify.api.model.enums.WebhookDeliveryStatus.DELIVERED " +
+           "AND d.deliveredAt < :before")
+    int deleteDeliveredBefore(@Param("before") LocalDateTime before);
+}
@@ -11,5 +11,7 @@ public interface AuthService {
     AuthResponseDTO login(LoginDTO loginDTO);
     void processPasswordResetRequest(ForgotPasswordRequestDTO forgotPasswordRequestDTO);
     AuthResponseDTO refreshAccessToken(String refreshToken);
+    void revokeTokens(Long userId);
+    void logout(String accessToken, String refreshToken);
     String getCookieValue(HttpServletRequest request, String name);
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.questify.api.services.implementation;
 
 import com.questify.api.config.security.JwtService;
+import com.questify.api.config.security.PrincipalCache;
+import com.questify.api.config.security.RevokedUserCache;
+import com.questify.api.config.security.TokenRevocationList;
+import com.questify.api.config.security.VerifiedToken;
 import com.questify.api.model.enums.WebhookEventType;
 import com.questify.api.repository.*;
 import com.questify.api.dto.request.*;
@@ -11,6 +15,7 @@ import com.questify.api.mapper.UserMapper;
 import com.questify.api.model.*;
 import com.questify.api.model.enums.UserType;
 import com.questify.api.services.contract.*;
+import com.questify.api.util.SecureTokens;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,7 +25,6 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
@@ -32,14 +36,17 @@ public class AuthServiceImpl implements AuthService {
 
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
-    private static final SecureRandom secureRandom = new SecureRandom();
     private final UserRepository userRepository;
     private final EmailService emailService;
     private final JwtService jwtService;
     private final ResetPasswordRepository resetPasswordRepository;
     private final WebhookService webhookService;
+    private final RevokedUserCache revokedUserCache;
+    private final TokenRevocationList tokenRevocationList;
+    private final PrincipalCache principalCache;
 
     @Override
+    @Transactional
     public UserDTO register(RegistrationDTO registrationDTO) {
         if (!registrationDTO.getPassword().equals(registrationDTO.getConfirmPassword())) {
             throw new IllegalArgumentException("Passwords do not match");
@@ -47,7 +54,7 @@ public class AuthServiceImpl implements AuthService {
 
         User user = userMapper.toEntity(registrationDTO);
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        user.setActivationToken(generateSecureToken());
+        user.setActivationToken(SecureTokens.generate());
         userRepository.save(user);
 
         emailService.sendActivationEmail(user, user.getActivationToken());
@@ -63,6 +70,7 @@ public class AuthServiceImpl implements AuthService {
     }
 
     @Override
+    @Transactional
     public void resetPassword(Long id, PasswordResetDTO passwordResetDTO) {
         Optional<User> userOpt = userRepository.findById(id);
 
@@ -77,6 +85,9 @@ public class AuthServiceImpl implements AuthService {
         User user = userOpt.get();
         user.setPassword(passwordEncoder.encode(passwordResetDTO.getNewPassword()));
         userRepository.save(user);
+
+        // Sign out every session, as after a forgotten-password reset
+        revokeTokens(user.getId());
     }
 
     @Override
@@ -99,8 +110,8 @@ public class AuthServiceImpl implements AuthService {
 
         User user = userOpt.get();
 
-        String refreshToken = jwtService.generateRefreshToken(user.getId(), user.getUserType());
-        String token = jwtService.generateToken(user.getId(), user.getUserType());
+        String refreshToken = jwtService.generateRefreshToken(user.getId(), user.getUserType(), user.getTokenVersion());
+        String token = jwtService.generateToken(user.getId(), user.getUserType(), user.getTokenVersion());
 
         return AuthResponseDTO.builder()
                 .success(true)
@@ -116,7 +127,7 @@ public class AuthServiceImpl implements AuthService {
         if (userOpt.isEmpty()) return;
 
         User user = userOpt.get();
-        String token = generateSecureToken();
+        String token = SecureTokens.generate();
 
         PasswordResetToken resetToken = new PasswordResetToken();
         resetToken.setToken(token);
@@ -133,28 +144,59 @@ public class AuthServiceImpl implements AuthService {
             throw new IllegalArgumentException("Missing refresh token");
         }
 
-        if (!jwtService.validateToken(refreshToken)) {
-            throw new IllegalArgumentException("Invalid or expired refresh token");
-        }
+        VerifiedToken token = jwtService.verify(refreshToken)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid or expired refresh token"));
 
-        String type = jwtService.getClaim(refreshToken, "type");
-        if (!"refresh".equals(type)) {
+        if (!token.isRefreshToken()) {
             throw new IllegalArgumentException("Wrong token type");
         }
 
-        String userId = jwtService.getSubject(refreshToken);
+        if (tokenRevocationList.isRevoked(token)) {
+            throw new IllegalArgumentException("Invalid or expired refresh token");
+        }
 
-        User user = userRepository.findById(Long.parseLong(userId))
+        User user = userRepository.findById(token.userId())
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
+        if (user.getUserType() == UserType.BLACKLISTED || token.tokenVersion() < user.getTokenVersion()) {
+            throw new IllegalArgumentException("Invalid or expired refresh token");
+        }
+
         return AuthResponseDTO.builder()
                 .success(true)
                 .message("Refresh successful")
-                .accessToken(jwtService.generateToken(user.getId(), user.getUserType()))
+                .accessToken(jwtService.generateToken(user.getId(), user.getUserType(), user.getTokenVersion()))
                 .refreshToken(refreshToken)
                 .build();
     }
 
+    /**
+     * Invalidate every access and refresh token issued to a user so far
+     */
+    @Override
+    @Transactional
+    public void revokeTokens(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        user.setTokenVersionChangedAt(LocalDateTime.now());
+        userRepository.save(user);
+        revokedUserCache.update(user);
+        principalCache.evict(user.getId());
+    }
+
+    /**
+     * Revoke the tokens of the session being logged out, so they stop working before they expire
+     */
+    @Override
+    public void logout(String accessToken, String refreshToken) {
+        for (String token : new String[]{accessToken, refreshToken}) {
+            if (token != null) {
+                jwtService.verify(token).ifPresent(tokenRevocationList::revoke);
+            }
+        }
+    }
+
     public String getCookieValue(HttpServletRequest request, String name) {
         if (request.getCookies() == null) return null;
 
@@ -165,12 +207,6 @@ public class AuthServiceImpl implements AuthService {
                 .orElse(null);
     }
 
-    public static String generateSecureToken() {
-        byte[] randomBytes = new byte[32];
-        secureRandom.nextBytes(randomBytes);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
-    }
-
     @Scheduled(cron = "0 33 15 * * *", zone = "Europe/Brussels")
     @Transactional
     public void deletePasswordResetTokenAutomatically() {
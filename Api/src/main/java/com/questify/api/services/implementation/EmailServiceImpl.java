@@ -1,5 +1,6 @@
 package com.questify.api.services.implementation;
 
+import com.questify.api.config.AsyncConfig;
 import com.questify.api.exceptions.EmailSendingException;
 import com.questify.api.model.User;
 import com.questify.api.services.contract.EmailService;
@@ -27,7 +28,7 @@ public class EmailServiceImpl implements EmailService {
     private String frontendUrl;
 
     @Override
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendActivationEmail(User user, String token) {
         try {
             ClassPathResource resource = new ClassPathResource("templates/register.html");
@@ -53,7 +54,7 @@ public class EmailServiceImpl implements EmailService {
     }
 
     @Override
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendPasswordResetEmail(User user, String token) {
         try {
             ClassPathResource resource = new ClassPathResource("templates/password-reset.html");
@@ -79,7 +80,7 @@ public class EmailServiceImpl implements EmailService {
     }
 
     @Override
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendCertificateEmail(User user, String routeName, String museumName, int totalStops, String completedAt) {
         try {
             ClassPathResource resource = new ClassPathResource("templates/certificate.html");
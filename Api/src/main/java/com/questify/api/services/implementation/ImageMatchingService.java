@@ -1,17 +1,31 @@
 package com.questify.api.services.implementation;
 
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.opencv.calib3d.Calib3d;
 import org.opencv.core.*;
 import org.opencv.features2d.*;
 import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -25,122 +39,483 @@ public class ImageMatchingService {
     private static final double MATCH_THRESHOLD = 0.65; // 65% similarity required
     private static final int MIN_GOOD_MATCHES = 10; // Minimum matches for positive identification
 
+    private final ThreadPoolExecutor matchingExecutor;
+    private final int busyRetryAfterSeconds;
+    private final int maxEdge;
+    private final double claheClipLimit;
+    private final int maxFeatures;
+    private final int initialFeatures;
+    private final double ambiguousBand;
+    private final boolean geometricVerification;
+    private final double ransacReprojectionThreshold;
+    private final int fullScoreInliers;
+    private final ScanMetrics scanMetrics;
+
+    // Each matching thread owns its detector, matcher and scratch Mats; tracked here for release on shutdown
+    private final Set<MatchingContext> contexts = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<MatchingContext> threadContext = ThreadLocal.withInitial(this::newContext);
+
+    /**
+     * OpenCV work runs on a dedicated pool sized to the core count, so a burst of scans cannot
+     * occupy every CPU and starve lightweight endpoints. When the queue is full, callers get an
+     * {@link ImageMatchingBusyException} right away instead of waiting behind the backlog.
+     * The pool keeps platform threads when spring.threads.virtual.enabled is set: OpenCV work is
+     * CPU-bound and runs in native code, so virtual threads would only add scheduling overhead.
+     */
+    public ImageMatchingService(
+            @Value("${image.matching.executor.threads:0}") int threads,
+            @Value("${image.matching.executor.queue-capacity:32}") int queueCapacity,
+            @Value("${image.matching.busy-retry-after-seconds:3}") int busyRetryAfterSeconds,
+            @Value("${image.matching.max-edge:1024}") int maxEdge,
+            @Value("${image.matching.clahe-clip-limit:2.0}") double claheClipLimit,
+            @Value("${image.matching.max-features:500}") int maxFeatures,
+            @Value("${image.matching.progressive.initial-features:150}") int initialFeatures,
+            @Value("${image.matching.progressive.ambiguous-band:0.15}") double ambiguousBand,
+            @Value("${image.matching.geometric.enabled:true}") boolean geometricVerification,
+            @Value("${image.matching.geometric.ransac-reprojection-threshold:5.0}") double ransacReprojectionThreshold,
+            @Value("${image.matching.geometric.full-score-inliers:40}") int fullScoreInliers,
+            ScanMetrics scanMetrics
+    ) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.matchingExecutor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("image-matching-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.busyRetryAfterSeconds = busyRetryAfterSeconds;
+        this.maxEdge = maxEdge;
+        this.claheClipLimit = claheClipLimit;
+        this.maxFeatures = maxFeatures;
+        this.initialFeatures = initialFeatures;
+        this.ambiguousBand = ambiguousBand;
+        this.geometricVerification = geometricVerification;
+        this.ransacReprojectionThreshold = ransacReprojectionThreshold;
+        this.fullScoreInliers = fullScoreInliers;
+        this.scanMetrics = scanMetrics;
+        log.info("Image matching executor: {} threads, queue capacity {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        matchingExecutor.shutdown();
+        if (matchingExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            contexts.forEach(MatchingContext::release);
+            contexts.clear();
+        } else {
+            log.warn("Image matching executor did not terminate in time, native matching state not released");
+        }
+    }
+
     /**
-     * Compare user-uploaded image with stored painting image
+     * Compare user-uploaded image with the pre-extracted features of a stored painting image
      *
      * @param userImage User's photo (MultipartFile)
-     * @param storedImagePath Path to reference painting image in MinIO
+     * @param reference ORB features of the reference painting
      * @return Match score between 0.0 and 1.0
+     * @throws ImageMatchingBusyException if the matching queue is full
      */
-    public double compareImages(MultipartFile userImage, String storedImagePath) throws IOException {
+    public double compareImages(MultipartFile userImage, ReferenceFeatures reference) throws IOException {
+        return compareImages(userImage.getBytes(), reference);
+    }
 
-        // Convert MultipartFile to temporary file
-        Path tempUserImage = Files.createTempFile("user-upload-", ".jpg");
-        try {
-            userImage.transferTo(tempUserImage.toFile());
+    /**
+     * Compare an encoded user photo with the pre-extracted features of a stored painting image
+     *
+     * @param encodedUserImage User's photo as uploaded (e.g. JPEG bytes)
+     * @param reference ORB features of the reference painting
+     * @return Match score between 0.0 and 1.0
+     * @throws ImageMatchingBusyException if the matching queue is full
+     */
+    public double compareImages(byte[] encodedUserImage, ReferenceFeatures reference) throws IOException {
+        double score = runBounded(() -> compareImages(threadContext.get(), encodedUserImage, reference));
+        scanMetrics.recordConfidence(score);
+        return score;
+    }
 
-            // Load both images
-            Mat imgUser = Imgcodecs.imread(tempUserImage.toString(), Imgcodecs.IMREAD_GRAYSCALE);
-            Mat imgStored = Imgcodecs.imread(storedImagePath, Imgcodecs.IMREAD_GRAYSCALE);
+    private double compareImages(MatchingContext ctx, byte[] encodedUserImage, ReferenceFeatures reference) {
 
-            if (imgUser.empty() || imgStored.empty()) {
-                log.error("Failed to load images for comparison");
+        if (reference.isEmpty()) {
+            log.warn("No features available for reference image");
+            return 0.0;
+        }
+
+        // Decode straight from the upload buffer, no temp file needed
+        if (!preprocess(ctx, encodedUserImage)) {
+            log.error("Failed to load user image for comparison");
+            return 0.0;
+        }
+
+        return performFeatureMatching(ctx, reference);
+    }
+
+    /**
+     * Compare the features of a user photo with the features of a stored painting image. Unlike
+     * compareImages this does not record the confidence metric: a lookup scores several candidates,
+     * so the caller records the score it settles on.
+     *
+     * @return Match score between 0.0 and 1.0
+     * @throws ImageMatchingBusyException if the matching queue is full
+     */
+    public double compareFeatures(ReferenceFeatures query, ReferenceFeatures reference) throws IOException {
+        return runBounded(() -> {
+            MatchingContext ctx = threadContext.get();
+            if (query.isEmpty() || reference.isEmpty()) {
                 return 0.0;
             }
+            query.copyDescriptorsTo(ctx.descriptors);
+            double score = scoreMatches(ctx, query.getKeypointCount(), reference);
+            return verifyGeometryIfAmbiguous(ctx, score, query::getPoints, reference);
+        });
+    }
+
+    /**
+     * Detect keypoints and compute descriptors for a user photo, e.g. to look it up in a museum index
+     *
+     * @throws ImageMatchingBusyException if the matching queue is full
+     */
+    public ReferenceFeatures extractImageFeatures(MultipartFile image) throws IOException {
+        byte[] encodedImage = image.getBytes();
+        return runBounded(() -> extractFeatures(threadContext.get(), encodedImage));
+    }
+
+    /**
+     * Detect keypoints and compute descriptors for an uploaded reference painting image
+     */
+    public ReferenceFeatures extractReferenceFeatures(MultipartFile referenceImage) throws IOException {
+        return extractReferenceFeatures(referenceImage.getBytes());
+    }
+
+    /**
+     * Detect keypoints and compute descriptors for a reference painting image
+     *
+     * @param encodedImage Encoded (e.g. JPEG) reference painting image
+     * @return Extracted features, empty when the image could not be decoded
+     * @throws ImageMatchingBusyException if the matching queue is full
+     */
+    public ReferenceFeatures extractReferenceFeatures(byte[] encodedImage) throws IOException {
+        return runBounded(() -> extractFeatures(threadContext.get(), encodedImage));
+    }
+
+    private ReferenceFeatures extractFeatures(MatchingContext ctx, byte[] encodedImage) {
+
+        if (!preprocess(ctx, encodedImage)) {
+            log.error("Failed to decode image ({} bytes)", encodedImage.length);
+            return ReferenceFeatures.empty();
+        }
+
+        detectAndCompute(ctx);
+        return ReferenceFeatures.fromDescriptors(ctx.keypoints, ctx.descriptors);
+    }
+
+    /**
+     * Run CPU-heavy OpenCV work on the matching pool and wait for the result
+     */
+    private <T> T runBounded(Callable<T> task) throws IOException {
+        Future<T> future;
+        Timer.Sample queued = scanMetrics.start();
+        try {
+            future = matchingExecutor.submit(() -> {
+                scanMetrics.stop(queued, ScanMetrics.STAGE_QUEUE_WAIT);
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Image matching queue full ({} queued), rejecting request", matchingExecutor.getQueue().size());
+            throw new ImageMatchingBusyException(
+                    "Het is momenteel erg druk. Probeer het over " + busyRetryAfterSeconds + " seconden opnieuw.",
+                    busyRetryAfterSeconds
+            );
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for image matching", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Image matching failed", e.getCause());
+        }
+    }
+
+    /**
+     * Decode an image at reduced resolution and normalize its contrast before feature extraction.
+     *
+     * Phone photos and reference scans are brought down to at most maxEdge pixels on their longest
+     * side, so extraction cost no longer depends on the camera resolution. JPEG decoding is
+     * reduced by a power of two where possible, which is far cheaper than decoding at full size
+     * and resizing afterwards. CLAHE then evens out lighting differences between gallery and scan.
+     *
+     * @return true if the image was decoded; the result is left in ctx.normalized
+     */
+    private boolean preprocess(MatchingContext ctx, byte[] encodedImage) {
 
-            double score = performFeatureMatching(imgUser, imgStored);
+        Timer.Sample decoding = scanMetrics.start();
+        int reducedMode = selectReducedDecodeMode(encodedImage);
 
-            // Cleanup
-            imgUser.release();
-            imgStored.release();
+        MatOfByte buffer = new MatOfByte(encodedImage);
+        Mat decoded = Imgcodecs.imdecode(buffer, reducedMode);
+        buffer.release();
 
-            return score;
+        try {
+            if (decoded.empty()) {
+                return false;
+            }
+
+            Mat source = decoded;
+            int longestEdge = Math.max(decoded.cols(), decoded.rows());
+            if (longestEdge > maxEdge) {
+                double scale = (double) maxEdge / longestEdge;
+                Imgproc.resize(decoded, ctx.resized, new Size(), scale, scale, Imgproc.INTER_AREA);
+                source = ctx.resized;
+            }
+
+            ctx.clahe.apply(source, ctx.normalized);
+            return true;
 
         } finally {
-            Files.deleteIfExists(tempUserImage);
+            decoded.release();
+            scanMetrics.stop(decoding, ScanMetrics.STAGE_DECODE);
+        }
+    }
+
+    /**
+     * Pick the largest IMREAD_REDUCED_GRAYSCALE_* factor that keeps the longest edge at or above maxEdge,
+     * reading only the image header to find the original dimensions
+     */
+    private int selectReducedDecodeMode(byte[] encodedImage) {
+
+        int longestEdge = readLongestEdge(encodedImage);
+        if (longestEdge <= 0) {
+            return Imgcodecs.IMREAD_GRAYSCALE;
+        }
+
+        if (longestEdge / 8 >= maxEdge) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+        }
+        if (longestEdge / 4 >= maxEdge) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+        }
+        if (longestEdge / 2 >= maxEdge) {
+            return Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+        }
+        return Imgcodecs.IMREAD_GRAYSCALE;
+    }
+
+    private int readLongestEdge(byte[] encodedImage) {
+        // Explicit memory cache: ImageIO.createImageInputStream would spill to a temp file by default
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(encodedImage))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return -1;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return Math.max(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return -1;
         }
     }
 
     /**
      * Perform ORB (Oriented FAST and Rotated BRIEF) feature matching
      * ORB is patent-free alternative to SIFT/SURF
+     *
+     * Matching is progressive: the photo is first scored with a small feature budget. Only when that
+     * score lands in the ambiguous band around MATCH_THRESHOLD are the full maxFeatures extracted and
+     * scored again, so clear matches and clear misses skip most of the detection and matching work.
+     * A score that is still ambiguous after the full pass is settled by geometric verification.
+     *
+     * Expects the preprocessed user image in ctx.normalized.
      */
-    private double performFeatureMatching(Mat img1, Mat img2) {
-
-        // Initialize ORB detector
-        ORB detector = ORB.create(
-                500, // Max features to detect
-                1.2f, // Scale factor
-                8, // Pyramid levels
-                31, // Edge threshold
-                0, // First level
-                2, // WTA_K
-                ORB.HARRIS_SCORE,
-                31,
-                20
-        );
+    private double performFeatureMatching(MatchingContext ctx, ReferenceFeatures reference) {
 
-        // Detect keypoints and compute descriptors
-        MatOfKeyPoint keypoints1 = new MatOfKeyPoint();
-        MatOfKeyPoint keypoints2 = new MatOfKeyPoint();
-        Mat descriptors1 = new Mat();
-        Mat descriptors2 = new Mat();
+        if (initialFeatures > 0 && initialFeatures < maxFeatures) {
+            double score = matchWithBudget(ctx, reference, initialFeatures);
+            if (!isAmbiguous(score)) {
+                return score;
+            }
+            log.debug("Ambiguous score {} with {} features, escalating to {}", score, initialFeatures, maxFeatures);
+            scanMetrics.recordEscalation(ScanMetrics.ESCALATION_FULL_FEATURES);
+        }
+
+        double score = matchWithBudget(ctx, reference, maxFeatures);
+        return verifyGeometryIfAmbiguous(ctx, score, () -> ReferenceFeatures.pointsOf(ctx.keypoints), reference);
+    }
+
+    private double matchWithBudget(MatchingContext ctx, ReferenceFeatures reference, int features) {
 
-        detector.detectAndCompute(img1, new Mat(), keypoints1, descriptors1);
-        detector.detectAndCompute(img2, new Mat(), keypoints2, descriptors2);
+        // Detect keypoints and compute descriptors
+        ctx.detector.setMaxFeatures(features);
+        try {
+            detectAndCompute(ctx);
+        } finally {
+            ctx.detector.setMaxFeatures(maxFeatures);
+        }
 
-        if (descriptors1.empty() || descriptors2.empty()) {
-            log.warn("No features detected in one or both images");
+        if (ctx.descriptors.empty()) {
+            log.warn("No features detected in user image");
             return 0.0;
         }
 
+        return scoreMatches(ctx, ctx.keypoints.rows(), reference);
+    }
+
+    private void detectAndCompute(MatchingContext ctx) {
+        Timer.Sample extraction = scanMetrics.start();
+        ctx.detector.detectAndCompute(ctx.normalized, ctx.mask, ctx.keypoints, ctx.descriptors);
+        scanMetrics.stop(extraction, ScanMetrics.STAGE_FEATURE_EXTRACTION);
+    }
+
+    /**
+     * Score the query descriptors in ctx.descriptors against a reference using Lowe's ratio test
+     */
+    private double scoreMatches(MatchingContext ctx, int queryKeypointCount, ReferenceFeatures reference) {
+        Timer.Sample matching = scanMetrics.start();
+        double score = computeScore(ctx, queryKeypointCount, reference);
+        scanMetrics.stop(matching, ScanMetrics.STAGE_MATCHING);
+        return score;
+    }
+
+    private double computeScore(MatchingContext ctx, int queryKeypointCount, ReferenceFeatures reference) {
+
+        reference.copyDescriptorsTo(ctx.referenceDescriptors);
+
         // Match descriptors using BFMatcher with Hamming distance
-        DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
         List<MatOfDMatch> knnMatches = new ArrayList<>();
+        int goodMatches = 0;
+        ctx.goodMatchCount = 0;
 
         try {
-            matcher.knnMatch(descriptors1, descriptors2, knnMatches, 2);
+            ctx.matcher.knnMatch(ctx.descriptors, ctx.referenceDescriptors, knnMatches, 2);
+
+            if (ctx.goodQueryRows.length < knnMatches.size()) {
+                ctx.goodQueryRows = new int[knnMatches.size()];
+                ctx.goodReferenceRows = new int[knnMatches.size()];
+            }
+
+            // Apply Lowe's ratio test to filter good matches
+            for (MatOfDMatch match : knnMatches) {
+                DMatch[] matchArray = match.toArray();
+                if (matchArray.length >= 2) {
+                    if (matchArray[0].distance < 0.75f * matchArray[1].distance) {
+                        ctx.goodQueryRows[goodMatches] = matchArray[0].queryIdx;
+                        ctx.goodReferenceRows[goodMatches] = matchArray[0].trainIdx;
+                        goodMatches++;
+                    }
+                }
+            }
+            ctx.goodMatchCount = goodMatches;
         } catch (Exception e) {
             log.error("Feature matching failed", e);
             return 0.0;
+        } finally {
+            knnMatches.forEach(Mat::release);
         }
 
-        // Apply Lowe's ratio test to filter good matches
-        List<DMatch> goodMatches = new ArrayList<>();
-        for (MatOfDMatch match : knnMatches) {
-            DMatch[] matchArray = match.toArray();
-            if (matchArray.length >= 2) {
-                if (matchArray[0].distance < 0.75f * matchArray[1].distance) {
-                    goodMatches.add(matchArray[0]);
-                }
-            }
-        }
+        scanMetrics.recordGoodMatches(goodMatches);
 
         // Calculate confidence score
-        if (goodMatches.size() < MIN_GOOD_MATCHES) {
-            log.info("Insufficient good matches: {} (need {})", goodMatches.size(), MIN_GOOD_MATCHES);
+        if (goodMatches < MIN_GOOD_MATCHES) {
+            log.info("Insufficient good matches: {} (need {})", goodMatches, MIN_GOOD_MATCHES);
             return 0.0;
         }
 
         // Score based on ratio of good matches
-        int totalKeypoints = Math.min(keypoints1.toArray().length, keypoints2.toArray().length);
-        double matchRatio = (double) goodMatches.size() / totalKeypoints;
+        int totalKeypoints = Math.min(queryKeypointCount, reference.getKeypointCount());
+        double matchRatio = (double) goodMatches / totalKeypoints;
 
         // Normalize score between 0 and 1
         double score = Math.min(1.0, matchRatio * 2.0); // Scale up since perfect match is rare
 
-        log.info("Image matching: {} good matches, score: {}", goodMatches.size(), score);
-
-        // Cleanup
-        keypoints1.release();
-        keypoints2.release();
-        descriptors1.release();
-        descriptors2.release();
-        detector.clear();
+        log.info("Image matching: {} good matches, score: {}", goodMatches, score);
 
         return score;
     }
 
+    /**
+     * Second matching stage for borderline scores: fit a homography between the good matches with
+     * RANSAC and score by the number of geometrically consistent matches. A photo of the right
+     * painting maps onto the reference with one perspective transform; chance descriptor matches
+     * from another painting do not, so inliers separate the two far better than the ratio-test count.
+     *
+     * Expects the good matches of the last scoreMatches call in ctx.
+     */
+    private double verifyGeometryIfAmbiguous(
+            MatchingContext ctx,
+            double score,
+            Supplier<float[]> queryPoints,
+            ReferenceFeatures reference
+    ) {
+        if (!geometricVerification || !isAmbiguous(score)
+                || ctx.goodMatchCount < MIN_GOOD_MATCHES || !reference.hasPoints()) {
+            return score;
+        }
+
+        float[] query = queryPoints.get();
+        if (query.length == 0) {
+            return score;
+        }
+
+        scanMetrics.recordEscalation(ScanMetrics.ESCALATION_GEOMETRIC);
+        Timer.Sample verifying = scanMetrics.start();
+
+        int count = ctx.goodMatchCount;
+        float[] source = new float[count * 2];
+        float[] target = new float[count * 2];
+        float[] referencePoints = reference.getPoints();
+        for (int i = 0; i < count; i++) {
+            int queryRow = ctx.goodQueryRows[i];
+            int referenceRow = ctx.goodReferenceRows[i];
+            source[i * 2] = query[queryRow * 2];
+            source[i * 2 + 1] = query[queryRow * 2 + 1];
+            target[i * 2] = referencePoints[referenceRow * 2];
+            target[i * 2 + 1] = referencePoints[referenceRow * 2 + 1];
+        }
+        ctx.queryPoints.create(count, 1, CvType.CV_32FC2);
+        ctx.queryPoints.put(0, 0, source);
+        ctx.referencePoints.create(count, 1, CvType.CV_32FC2);
+        ctx.referencePoints.put(0, 0, target);
+
+        Mat homography = Calib3d.findHomography(
+                ctx.queryPoints, ctx.referencePoints, Calib3d.RANSAC, ransacReprojectionThreshold, ctx.inlierMask
+        );
+        try {
+            if (homography.empty()) {
+                log.info("Geometric verification: no homography for {} good matches", count);
+                return 0.0;
+            }
+            int inliers = Core.countNonZero(ctx.inlierMask);
+            double geometricScore = Math.min(1.0, (double) inliers / fullScoreInliers);
+            log.info("Geometric verification: {} of {} good matches are inliers, score: {} (was {})",
+                    inliers, count, geometricScore, score);
+            return geometricScore;
+        } finally {
+            homography.release();
+            scanMetrics.stop(verifying, ScanMetrics.STAGE_GEOMETRIC_VERIFICATION);
+        }
+    }
+
+    private boolean isAmbiguous(double score) {
+        return Math.abs(score - MATCH_THRESHOLD) <= ambiguousBand;
+    }
+
+    private MatchingContext newContext() {
+        MatchingContext ctx = new MatchingContext(maxFeatures, claheClipLimit);
+        contexts.add(ctx);
+        return ctx;
+    }
+
     /**
      * Check if match score meets threshold
      */
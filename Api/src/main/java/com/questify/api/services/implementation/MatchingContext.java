@@ -0,0 +1,73 @@
+package com.questify.api.services.implementation;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.features2d.DescriptorMatcher;
+import org.opencv.features2d.ORB;
+import org.opencv.imgproc.CLAHE;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Thread-confined OpenCV state for one image-matching worker thread.
+ *
+ * Detector, matcher and CLAHE instances plus scratch Mats are created once per thread and reused for
+ * every scan, instead of allocating (and occasionally leaking) native objects on each call. Instances
+ * must never be shared between threads.
+ */
+class MatchingContext {
+
+    final ORB detector;
+    final DescriptorMatcher matcher;
+    final CLAHE clahe;
+
+    final Mat mask = new Mat();
+    final Mat resized = new Mat();
+    final Mat normalized = new Mat();
+    final MatOfKeyPoint keypoints = new MatOfKeyPoint();
+    final Mat descriptors = new Mat();
+    final Mat referenceDescriptors = new Mat();
+    final MatOfPoint2f queryPoints = new MatOfPoint2f();
+    final MatOfPoint2f referencePoints = new MatOfPoint2f();
+    final Mat inlierMask = new Mat();
+
+    // Query and reference row of every match that passed the ratio test in the last scoreMatches call
+    int[] goodQueryRows = new int[0];
+    int[] goodReferenceRows = new int[0];
+    int goodMatchCount;
+
+    MatchingContext(int maxFeatures, double claheClipLimit) {
+        this.detector = ORB.create(
+                maxFeatures, // Max features to detect
+                1.2f, // Scale factor
+                8, // Pyramid levels
+                31, // Edge threshold
+                0, // First level
+                2, // WTA_K
+                ORB.HARRIS_SCORE,
+                31,
+                20
+        );
+        this.matcher = DescriptorMatcher.create(DescriptorMatcher.BRUTEFORCE_HAMMING);
+        this.clahe = Imgproc.createCLAHE(claheClipLimit, new Size(8, 8));
+    }
+
+    /**
+     * Release all native memory held by this context. The context must not be used afterwards.
+     */
+    void release() {
+        mask.release();
+        resized.release();
+        normalized.release();
+        keypoints.release();
+        descriptors.release();
+        referenceDescriptors.release();
+        queryPoints.release();
+        referencePoints.release();
+        inlierMask.release();
+        matcher.clear();
+        detector.clear();
+        clahe.collectGarbage();
+    }
+}
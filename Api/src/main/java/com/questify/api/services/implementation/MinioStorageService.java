@@ -3,17 +3,17 @@ package com.questify.api.services.implementation;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
 import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -34,16 +34,13 @@ public class MinioStorageService {
     }
 
     /**
-     * Download image from MinIO to temporary local file for OpenCV processing
+     * Download image from MinIO into memory for OpenCV processing
      *
      * @param objectName Path in MinIO bucket
-     * @return Local file path
+     * @return Encoded image bytes
      * @throws IllegalStateException if the object does not exist in MinIO
      */
-    public String downloadImageToTemp(String objectName) throws Exception {
-
-        // Create temp file
-        Path tempFile = Files.createTempFile("painting-ref-", ".jpg");
+    public byte[] downloadImage(String objectName) throws Exception {
 
         try (InputStream stream = minioClient.getObject(
                 GetObjectArgs.builder()
@@ -51,13 +48,11 @@ public class MinioStorageService {
                         .object(objectName)
                         .build())) {
 
-            Files.copy(stream, tempFile, StandardCopyOption.REPLACE_EXISTING);
-
-            log.info("Downloaded image from MinIO: {} -> {}", objectName, tempFile);
-            return tempFile.toString();
+            byte[] data = stream.readAllBytes();
+            log.info("Downloaded image from MinIO: {} ({} bytes)", objectName, data.length);
+            return data;
 
         } catch (ErrorResponseException e) {
-            Files.deleteIfExists(tempFile);
             if ("NoSuchKey".equals(e.errorResponse().code())) {
                 throw new IllegalStateException(
                         "Geen referentieafbeelding gevonden voor dit schilderij (object: " + objectName + "). " +
@@ -65,9 +60,6 @@ public class MinioStorageService {
                 );
             }
             throw e;
-        } catch (Exception e) {
-            Files.deleteIfExists(tempFile);
-            throw e;
         }
     }
 
@@ -91,6 +83,96 @@ public class MinioStorageService {
         return objectName;
     }
 
+    /**
+     * Store pre-extracted ORB features next to the painting reference image
+     *
+     * @return ETag of the stored object, used to detect features replaced by another node
+     */
+    public String uploadReferenceFeatures(String paintingKey, byte[] data) throws Exception {
+
+        String objectName = "paintings/" + paintingKey + ".orb";
+
+        ObjectWriteResponse response = minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(data), data.length, -1)
+                        .contentType("application/octet-stream")
+                        .build()
+        );
+
+        log.info("Uploaded reference features: {} ({} bytes)", objectName, data.length);
+        return normalizeEtag(response.etag());
+    }
+
+    /**
+     * Remove the stored ORB features of a painting, e.g. because its reference image was replaced
+     */
+    public void deleteReferenceFeatures(String paintingKey) throws Exception {
+
+        String objectName = "paintings/" + paintingKey + ".orb";
+
+        minioClient.removeObject(
+                RemoveObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build()
+        );
+
+        log.info("Deleted reference features: {}", objectName);
+    }
+
+    /**
+     * Load pre-extracted ORB features for a painting
+     *
+     * @return Serialized features with their ETag, or empty if none were stored yet
+     */
+    public Optional<StoredObject> downloadReferenceFeatures(String paintingKey) throws Exception {
+
+        String objectName = "paintings/" + paintingKey + ".orb";
+
+        try (GetObjectResponse stream = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build())) {
+
+            return Optional.of(new StoredObject(stream.readAllBytes(), normalizeEtag(stream.headers().get("ETag"))));
+
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the current ETag of the stored ORB features without downloading them
+     *
+     * @return ETag, or empty if no features are stored for this painting
+     */
+    public Optional<String> getReferenceFeaturesEtag(String paintingKey) throws Exception {
+
+        String objectName = "paintings/" + paintingKey + ".orb";
+
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .build()
+            );
+            return Optional.ofNullable(normalizeEtag(stat.etag()));
+
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Get public URL for image (for frontend display)
      */
@@ -118,14 +200,14 @@ public class MinioStorageService {
         }
     }
 
-    /**
-     * Delete temporary file after OpenCV processing
-     */
-    public void deleteTempFile(String filePath) {
-        try {
-            Files.deleteIfExists(Path.of(filePath));
-        } catch (IOException e) {
-            log.warn("Failed to delete temp file: {}", filePath, e);
-        }
+    private String normalizeEtag(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class StoredObject {
+        private final byte[] data;
+        private final String etag;
     }
-}
\ No newline at end of file
+}
@@ -24,6 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -118,6 +119,13 @@ public class MuseumService {
         return mapToPaintingDetailDTO(painting);
     }
 
+    /**
+     * Get painting details with hints, empty if the painting no longer exists
+     */
+    public Optional<PaintingDetailDTO> findPaintingDetails(Long paintingId) {
+        return paintingRepository.findByIdWithHints(paintingId).map(this::mapToPaintingDetailDTO);
+    }
+
     // =============== MAPPERS ===============
 
     /**
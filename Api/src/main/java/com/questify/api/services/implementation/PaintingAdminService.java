@@ -30,6 +30,8 @@ public class PaintingAdminService {
     private final MuseumRepository museumRepository;
     private final HintRepository hintRepository;
     private final MinioStorageService minioStorageService;
+    private final ReferenceFeatureCache referenceFeatureCache;
+    private final PaintingIdentificationService paintingIdentificationService;
 
     @Transactional(readOnly = true)
     public List<PaintingDetailDTO> getAllPaintings() {
@@ -74,6 +76,7 @@ public class PaintingAdminService {
                 .build();
 
         Painting saved = paintingRepository.save(painting);
+        paintingIdentificationService.invalidateMuseum(museum.getMuseumId());
         return convertToDTO(saved);
     }
 
@@ -96,6 +99,7 @@ public class PaintingAdminService {
         painting.setExternalLink(dto.getExternalLink());
 
         Painting updated = paintingRepository.save(painting);
+        paintingIdentificationService.invalidateMuseum(updated.getMuseum().getMuseumId());
         return convertToDTO(updated);
     }
 
@@ -104,9 +108,10 @@ public class PaintingAdminService {
         Painting painting = paintingRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Painting not found with id: " + id));
         paintingRepository.delete(painting);
+        paintingIdentificationService.invalidateMuseum(painting.getMuseum().getMuseumId());
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public String uploadPaintingImage(Long paintingId, MultipartFile file) throws Exception {
         Painting painting = paintingRepository.findById(paintingId)
                 .orElseThrow(() -> new ResourceNotFoundException("Painting not found with id: " + paintingId));
@@ -116,7 +121,13 @@ public class PaintingAdminService {
             throw new IllegalStateException("Painting has no imageRecognitionKey set. Set a key before uploading an image.");
         }
 
-        return minioStorageService.uploadPaintingImage(file, key);
+        String objectName = minioStorageService.uploadPaintingImage(file, key);
+
+        // Rebuild the museum index once the new features are in place, not before
+        Long museumId = painting.getMuseum().getMuseumId();
+        referenceFeatureCache.refreshAfterCommit(key, file.getBytes(),
+                () -> paintingIdentificationService.invalidateMuseum(museumId));
+        return objectName;
     }
 
     @Transactional
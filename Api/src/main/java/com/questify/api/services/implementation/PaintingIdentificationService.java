@@ -0,0 +1,259 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.config.AsyncConfig;
+import com.questify.api.dto.response.ImageVerificationResponseDTO;
+import com.questify.api.dto.response.PaintingDetailDTO;
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import com.questify.api.exceptions.ResourceNotFoundException;
+import com.questify.api.repository.MuseumRepository;
+import com.questify.api.repository.PaintingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Identify which painting of a museum a photo shows ("what am I looking at?").
+ *
+ * Instead of comparing the photo against every painting pairwise, each museum gets a prebuilt
+ * {@link PaintingIndex} over all of its reference descriptors. The index proposes a few candidates
+ * by descriptor votes, and only those candidates are scored with the regular ORB matcher.
+ *
+ * Indexes are built on the background executor: for every museum at startup, again once a painting
+ * change commits, and when an index is older than the max age. Lookups keep using the previous index
+ * meanwhile, so only the very first lookup of a museum whose index is not built yet waits for it.
+ * Nothing here holds a database connection while features are downloaded or matched: the painting
+ * list is read in a short transaction of its own, and indexes of different museums build in parallel.
+ */
+@Slf4j
+@Service
+public class PaintingIdentificationService {
+
+    private static final int CANDIDATES_TO_VERIFY = 3;
+
+    private final PaintingRepository paintingRepository;
+    private final MuseumRepository museumRepository;
+    private final ReferenceFeatureCache referenceFeatureCache;
+    private final ImageMatchingService imageMatchingService;
+    private final MuseumService museumService;
+    private final ScanMetrics scanMetrics;
+    private final long indexMaxAgeMillis;
+    private final Map<Long, PaintingIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+    private final Map<Long, Long> pendingRebuilds = new ConcurrentHashMap<>(); // museumId -> requested at
+    private final Executor backgroundExecutor;
+
+    public PaintingIdentificationService(
+            PaintingRepository paintingRepository,
+            MuseumRepository museumRepository,
+            ReferenceFeatureCache referenceFeatureCache,
+            ImageMatchingService imageMatchingService,
+            MuseumService museumService,
+            ScanMetrics scanMetrics,
+            @Qualifier(AsyncConfig.BACKGROUND_EXECUTOR) Executor backgroundExecutor,
+            @Value("${image.matching.museum-index.max-age-seconds:600}") long indexMaxAgeSeconds
+    ) {
+        this.paintingRepository = paintingRepository;
+        this.museumRepository = museumRepository;
+        this.referenceFeatureCache = referenceFeatureCache;
+        this.imageMatchingService = imageMatchingService;
+        this.museumService = museumService;
+        this.scanMetrics = scanMetrics;
+        this.backgroundExecutor = backgroundExecutor;
+        this.indexMaxAgeMillis = indexMaxAgeSeconds * 1000;
+    }
+
+    /**
+     * Identify the painting shown in a user's photo among all paintings of a museum
+     *
+     * @throws ImageMatchingBusyException if the matcher is saturated; answered with 503 and Retry-After
+     */
+    public ImageVerificationResponseDTO identifyPainting(Long museumId, MultipartFile userImage) {
+
+        if (!museumRepository.existsById(museumId)) {
+            throw new ResourceNotFoundException("Museum not found with id: " + museumId);
+        }
+
+        try {
+            PaintingIndex index = getIndex(museumId);
+            ReferenceFeatures query = imageMatchingService.extractImageFeatures(userImage);
+
+            // 1. Cheap candidate lookup in the museum index
+            List<PaintingIndex.Candidate> candidates = index.query(query, CANDIDATES_TO_VERIFY);
+
+            // 2. Score only the best candidates with the regular matcher
+            Long bestPaintingId = null;
+            double bestScore = 0.0;
+            for (PaintingIndex.Candidate candidate : candidates) {
+                double score = imageMatchingService.compareFeatures(query, candidate.features());
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestPaintingId = candidate.paintingId();
+                }
+            }
+
+            scanMetrics.recordConfidence(bestScore);
+            log.info("Painting identification - Museum: {}, Candidates: {}, Best: {}, Score: {}",
+                    museumId, candidates.size(), bestPaintingId, bestScore);
+
+            // A painting deleted since the index was built is simply not recognized
+            Optional<PaintingDetailDTO> details = bestPaintingId != null && imageMatchingService.isMatchValid(bestScore)
+                    ? museumService.findPaintingDetails(bestPaintingId)
+                    : Optional.empty();
+
+            if (details.isEmpty()) {
+                return ImageVerificationResponseDTO.builder()
+                        .isMatch(false)
+                        .confidenceScore(bestScore)
+                        .message("We konden dit schilderij niet herkennen. Probeer het nog eens.")
+                        .build();
+            }
+
+            return ImageVerificationResponseDTO.builder()
+                    .isMatch(true)
+                    .confidenceScore(bestScore)
+                    .message("Successfully identified painting!")
+                    .paintingDetails(details.get())
+                    .build();
+
+        } catch (ImageMatchingBusyException e) {
+            throw e;
+
+        } catch (Exception e) {
+            log.error("Painting identification failed", e);
+            return ImageVerificationResponseDTO.builder()
+                    .isMatch(false)
+                    .confidenceScore(0.0)
+                    .message("Identification error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Build the index of every museum in the background, so lookups do not wait for it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prebuildIndexes() {
+        museumRepository.findAllIds().forEach(this::scheduleRebuild);
+    }
+
+    /**
+     * Rebuild the index of a museum, e.g. after a painting or its image changed. Inside a transaction
+     * the rebuild starts once it commits, so it cannot pick up the state from before the change.
+     */
+    public void invalidateMuseum(Long museumId) {
+        if (museumId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRebuild(museumId);
+                }
+            });
+        } else {
+            scheduleRebuild(museumId);
+        }
+    }
+
+    private PaintingIndex getIndex(Long museumId) {
+        PaintingIndex index = indexes.get(museumId);
+        if (index != null) {
+            // Periodic rebuild picks up uploads handled by other nodes; keep serving this one meanwhile
+            if (index.isOlderThan(indexMaxAgeMillis)) {
+                scheduleRebuild(museumId);
+            }
+            return index;
+        }
+
+        // Nothing to serve yet: build it now, or wait for the build already running
+        return rebuild(museumId, 0L);
+    }
+
+    private void scheduleRebuild(Long museumId) {
+        // Only the first request starts a task; later ones are picked up by the loop of the running task
+        if (pendingRebuilds.put(museumId, System.currentTimeMillis()) == null) {
+            backgroundExecutor.execute(() -> runRebuilds(museumId));
+        }
+    }
+
+    private void runRebuilds(Long museumId) {
+        Long requestedAt;
+        while ((requestedAt = pendingRebuilds.get(museumId)) != null) {
+            try {
+                rebuild(museumId, requestedAt);
+            } catch (Exception e) {
+                log.warn("Failed to rebuild painting index for museum {}", museumId, e);
+            }
+            // A request that arrived while building replaced the value, so the loop builds once more
+            pendingRebuilds.remove(museumId, requestedAt);
+        }
+    }
+
+    /**
+     * Build the index of a museum unless one was built after {@code requestedAt}
+     */
+    private PaintingIndex rebuild(Long museumId, long requestedAt) {
+        List<PaintingRepository.RecognitionKey> paintings = paintingRepository.findRecognitionKeysByMuseumId(museumId);
+
+        // Build under a per-museum lock instead of computeIfAbsent, whose synchronized bin lock
+        // would pin a virtual thread for the whole MinIO download
+        ReentrantLock buildLock = buildLocks.computeIfAbsent(museumId, id -> new ReentrantLock());
+        buildLock.lock();
+        try {
+            PaintingIndex index = indexes.get(museumId);
+            if (index == null || !index.isBuiltAfter(requestedAt)) {
+                index = buildIndex(museumId, paintings);
+                indexes.put(museumId, index);
+            }
+            return index;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private PaintingIndex buildIndex(Long museumId, List<PaintingRepository.RecognitionKey> paintings) {
+
+        List<Long> paintingIds = new ArrayList<>();
+        List<ReferenceFeatures> features = new ArrayList<>();
+
+        for (PaintingRepository.RecognitionKey painting : paintings) {
+            String key = painting.getImageRecognitionKey();
+            if (key.isBlank()) {
+                continue;
+            }
+            try {
+                ReferenceFeatures referenceFeatures = referenceFeatureCache.get(key);
+                if (!referenceFeatures.isEmpty()) {
+                    paintingIds.add(painting.getPaintingId());
+                    features.add(referenceFeatures);
+                }
+            } catch (IllegalStateException e) {
+                // No reference image uploaded yet; the painting simply cannot be identified
+                log.debug("Skipping painting {} in museum index: {}", painting.getPaintingId(), e.getMessage());
+            } catch (ImageMatchingBusyException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to load reference features for painting " + painting.getPaintingId(), e);
+            }
+        }
+
+        PaintingIndex index = new PaintingIndex(paintingIds, features);
+        log.info("Built painting index for museum {}: {} paintings", museumId, index.size());
+        return index;
+    }
+}
@@ -0,0 +1,249 @@
+package com.questify.api.services.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Locality-sensitive hashing index over the ORB descriptors of every reference painting in a museum.
+ *
+ * ORB descriptors are 256-bit binary strings compared by Hamming distance. Each hash table keys a
+ * descriptor by a fixed random subset of its bits, so near-identical descriptors land in the same
+ * bucket with high probability. A query only compares against the few descriptors sharing a bucket
+ * in any table instead of every descriptor of every painting, and each match votes for the painting
+ * it belongs to.
+ *
+ * Instances are immutable after construction and safe to query from multiple threads.
+ */
+class PaintingIndex {
+
+    private static final int DESCRIPTOR_BYTES = 32;
+    private static final int DESCRIPTOR_LONGS = DESCRIPTOR_BYTES / Long.BYTES;
+    private static final int TABLE_COUNT = 8;
+    private static final int MAX_MATCH_DISTANCE = 64; // Hamming distance above which a match is ignored
+    private static final float RATIO = 0.8f; // Lowe's ratio against the best match in another painting
+    private static final long SEED = 0x5155455354L; // Fixed so an index is reproducible across nodes
+
+    private final Long[] paintingIds;
+    private final ReferenceFeatures[] features;
+    private final long[] descriptors;
+    private final int[] owners;
+    private final int bitsPerKey;
+    private final int[][] keyBits;
+    private final int[][] sortedKeys;
+    private final int[][] sortedEntries;
+    private final long builtAt = System.currentTimeMillis();
+
+    PaintingIndex(List<Long> paintingIds, List<ReferenceFeatures> features) {
+
+        this.paintingIds = paintingIds.toArray(new Long[0]);
+        this.features = features.toArray(new ReferenceFeatures[0]);
+
+        int total = 0;
+        for (ReferenceFeatures f : this.features) {
+            if (f.getCols() == DESCRIPTOR_BYTES) {
+                total += f.getRows();
+            }
+        }
+
+        this.descriptors = new long[total * DESCRIPTOR_LONGS];
+        this.owners = new int[total];
+
+        int row = 0;
+        for (int painting = 0; painting < this.features.length; painting++) {
+            ReferenceFeatures f = this.features[painting];
+            if (f.getCols() != DESCRIPTOR_BYTES) {
+                continue;
+            }
+            byte[] data = f.getDescriptors();
+            for (int r = 0; r < f.getRows(); r++, row++) {
+                pack(data, r * DESCRIPTOR_BYTES, descriptors, row * DESCRIPTOR_LONGS);
+                owners[row] = painting;
+            }
+        }
+
+        // About four times as many buckets as descriptors keeps buckets small, whatever the museum size
+        int bitLength = 32 - Integer.numberOfLeadingZeros(Math.max(1, total));
+        this.bitsPerKey = Math.max(12, Math.min(30, bitLength + 2));
+        this.keyBits = new int[TABLE_COUNT][bitsPerKey];
+        this.sortedKeys = new int[TABLE_COUNT][];
+        this.sortedEntries = new int[TABLE_COUNT][];
+
+        int[] candidateBits = mostBalancedBits(total);
+        Random random = new Random(SEED);
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            for (int b = 0; b < bitsPerKey; b++) {
+                keyBits[table][b] = candidateBits[random.nextInt(candidateBits.length)];
+            }
+            buildTable(table, total);
+        }
+    }
+
+    /**
+     * Count, per painting, how many query descriptors have a distinctive nearest neighbour in that painting
+     *
+     * @param query ORB features of the visitor's photo
+     * @return Best-voted paintings, most votes first, at most {@code limit}
+     */
+    List<Candidate> query(ReferenceFeatures query, int limit) {
+
+        int[] votes = new int[paintingIds.length];
+        if (query.isEmpty() || query.getCols() != DESCRIPTOR_BYTES || owners.length == 0) {
+            return List.of();
+        }
+
+        long[] packed = new long[DESCRIPTOR_LONGS];
+        byte[] data = query.getDescriptors();
+
+        for (int r = 0; r < query.getRows(); r++) {
+            pack(data, r * DESCRIPTOR_BYTES, packed, 0);
+
+            int bestDistance = Integer.MAX_VALUE;
+            int bestOwner = -1;
+            int secondDistance = Integer.MAX_VALUE;
+
+            for (int table = 0; table < TABLE_COUNT; table++) {
+                int[] keys = sortedKeys[table];
+                int key = hash(table, packed, 0);
+                for (int i = firstIndexOf(keys, key); i < keys.length && keys[i] == key; i++) {
+                    int entry = sortedEntries[table][i];
+                    int distance = hamming(packed, descriptors, entry * DESCRIPTOR_LONGS);
+                    int owner = owners[entry];
+
+                    if (distance < bestDistance) {
+                        if (owner != bestOwner) {
+                            secondDistance = bestDistance;
+                        }
+                        bestDistance = distance;
+                        bestOwner = owner;
+                    } else if (owner != bestOwner && distance < secondDistance) {
+                        secondDistance = distance;
+                    }
+                }
+            }
+
+            if (bestOwner >= 0 && bestDistance <= MAX_MATCH_DISTANCE
+                    && (secondDistance == Integer.MAX_VALUE || bestDistance < RATIO * secondDistance)) {
+                votes[bestOwner]++;
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (int painting = 0; painting < votes.length; painting++) {
+            if (votes[painting] > 0) {
+                candidates.add(new Candidate(paintingIds[painting], features[painting], votes[painting]));
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(b.votes(), a.votes()));
+        return candidates.size() > limit ? candidates.subList(0, limit) : candidates;
+    }
+
+    int size() {
+        return paintingIds.length;
+    }
+
+    boolean isOlderThan(long maxAgeMillis) {
+        return System.currentTimeMillis() - builtAt > maxAgeMillis;
+    }
+
+    boolean isBuiltAfter(long timeMillis) {
+        return builtAt > timeMillis;
+    }
+
+    /**
+     * ORB bits are far from uniformly distributed; hashing on bits that are set in roughly half of the
+     * descriptors keeps buckets evenly filled instead of piling most descriptors into a few of them
+     */
+    private int[] mostBalancedBits(int total) {
+        int bitCount = DESCRIPTOR_BYTES * 8;
+        int[] setCounts = new int[bitCount];
+        for (int row = 0; row < total; row++) {
+            for (int word = 0; word < DESCRIPTOR_LONGS; word++) {
+                long bits = descriptors[row * DESCRIPTOR_LONGS + word];
+                while (bits != 0) {
+                    setCounts[word * 64 + Long.numberOfTrailingZeros(bits)]++;
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        Integer[] bits = new Integer[bitCount];
+        for (int bit = 0; bit < bitCount; bit++) {
+            bits[bit] = bit;
+        }
+        Arrays.sort(bits, (a, b) -> Integer.compare(
+                Math.abs(2 * setCounts[a] - total),
+                Math.abs(2 * setCounts[b] - total)
+        ));
+
+        int[] balanced = new int[bitCount / 2];
+        for (int i = 0; i < balanced.length; i++) {
+            balanced[i] = bits[i];
+        }
+        return balanced;
+    }
+
+    private void buildTable(int table, int total) {
+        // Sort (key, row) pairs so each bucket is a contiguous run; memory stays linear in the descriptor count
+        long[] pairs = new long[total];
+        for (int row = 0; row < total; row++) {
+            pairs[row] = ((long) hash(table, descriptors, row * DESCRIPTOR_LONGS) << 32) | row;
+        }
+        Arrays.sort(pairs);
+
+        int[] keys = new int[total];
+        int[] entries = new int[total];
+        for (int i = 0; i < total; i++) {
+            keys[i] = (int) (pairs[i] >>> 32);
+            entries[i] = (int) pairs[i];
+        }
+
+        sortedKeys[table] = keys;
+        sortedEntries[table] = entries;
+    }
+
+    private static int firstIndexOf(int[] keys, int key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int hash(int table, long[] source, int offset) {
+        int key = 0;
+        for (int bit : keyBits[table]) {
+            long word = source[offset + (bit >>> 6)];
+            key = (key << 1) | (int) ((word >>> (bit & 63)) & 1L);
+        }
+        return key;
+    }
+
+    private static int hamming(long[] a, long[] b, int offset) {
+        int distance = 0;
+        for (int i = 0; i < DESCRIPTOR_LONGS; i++) {
+            distance += Long.bitCount(a[i] ^ b[offset + i]);
+        }
+        return distance;
+    }
+
+    private static void pack(byte[] source, int sourceOffset, long[] target, int targetOffset) {
+        for (int i = 0; i < DESCRIPTOR_LONGS; i++) {
+            long word = 0;
+            for (int b = 0; b < Long.BYTES; b++) {
+                word |= (source[sourceOffset + i * Long.BYTES + b] & 0xFFL) << (b * 8);
+            }
+            target[targetOffset + i] = word;
+        }
+    }
+
+    record Candidate(Long paintingId, ReferenceFeatures features, int votes) {
+    }
+}
@@ -3,15 +3,16 @@ package com.questify.api.services.implementation;
 import com.questify.api.dto.response.ImageVerificationResponseDTO;
 import com.questify.api.dto.response.PaintingDetailDTO;
 import com.questify.api.dto.response.RouteProgressDTO;
+import com.questify.api.exceptions.ImageMatchingBusyException;
 import com.questify.api.model.*;
 import com.questify.api.model.enums.WebhookEventType;
 import com.questify.api.repository.*;
 import com.questify.api.services.contract.EmailService;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -23,7 +24,7 @@ import java.util.Map;
 public class PaintingVerificationService {
 
     private final ImageMatchingService imageMatchingService;
-    private final MinioStorageService minioStorageService;
+    private final ReferenceFeatureCache referenceFeatureCache;
     private final MuseumService museumService;
     private final RouteProgressService progressService;
     private final PaintingRepository paintingRepository;
@@ -32,30 +33,41 @@ public class PaintingVerificationService {
     private final UserRepository userRepository;
     private final WebhookService webhookService;
     private final EmailService emailService;
+    private final ScanMetrics scanMetrics;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * Main method: Verify user's photo matches the current painting in their route
      *
      * Flow:
-     * 1. Check user is on correct stop
-     * 2. Download reference image from MinIO
-     * 3. Compare with user's photo using OpenCV
-     * 4. If match: record scan, advance progress, return painting details
+     * 1. Check user is on correct stop (short transaction)
+     * 2. Load reference features (extracted from MinIO once, then cached)
+     * 3. Compare with user's photo using OpenCV, outside any transaction: a scan waiting for a
+     *    matcher slot must not hold a database connection
+     * 4. If match: record scan, advance progress, return painting details (second short transaction)
      * 5. If no match: return failure
+     *
+     * @throws ImageMatchingBusyException if the matcher is saturated; answered with 503 and Retry-After
      */
-    @Transactional
     public ImageVerificationResponseDTO verifyPainting(
             Long userId,
             Long routeId,
             Long paintingId,
-            MultipartFile userImage
+            byte[] userImage
     ) {
 
         try {
-            // 1. Validate user is on correct painting
-            RouteProgressDTO progress = progressService.getOrCreateProgress(userId, routeId);
-
-            if (progress.isCompleted()) {
+            // 1. Validate user is on a route that is still running, and load the painting
+            Timer.Sample lookup = scanMetrics.start();
+            ScanTarget target = transactionTemplate.execute(status -> new ScanTarget(
+                    progressService.getOrCreateProgress(userId, routeId),
+                    paintingRepository.findById(paintingId)
+                            .orElseThrow(() -> new RuntimeException("Painting not found"))
+            ));
+            scanMetrics.stop(lookup, ScanMetrics.STAGE_PROGRESS_LOOKUP);
+
+            if (target.progress().isCompleted()) {
+                scanMetrics.recordOutcome("route_already_completed");
                 return ImageVerificationResponseDTO.builder()
                         .isMatch(false)
                         .confidenceScore(0.0)
@@ -63,19 +75,10 @@ public class PaintingVerificationService {
                         .build();
             }
 
-            // Check if painting already scanned
-            boolean alreadyScanned = scanRepository.existsByUser_IdAndPainting_PaintingIdAndRoute_RouteId(
-                    userId, paintingId, routeId
-            );
-
-            boolean isCurrentStopPainting = progress.getCurrentPainting() != null
-                    && progress.getCurrentPainting().getPaintingId().equals(paintingId);
-
-            // 2. Get painting reference image from MinIO
-            Painting painting = paintingRepository.findById(paintingId)
-                    .orElseThrow(() -> new RuntimeException("Painting not found"));
-
+            // 2. Get painting reference features
+            Painting painting = target.painting();
             if (painting.getImageRecognitionKey() == null || painting.getImageRecognitionKey().isBlank()) {
+                scanMetrics.recordOutcome("no_recognition_key");
                 return ImageVerificationResponseDTO.builder()
                         .isMatch(false)
                         .confidenceScore(0.0)
@@ -83,108 +86,48 @@ public class PaintingVerificationService {
                         .build();
             }
 
-            String referenceImagePath = "paintings/" + painting.getImageRecognitionKey() + ".jpg";
-            String localReferencePath;
+            ReferenceFeatures referenceFeatures;
+            Timer.Sample loading = scanMetrics.start();
             try {
-                localReferencePath = minioStorageService.downloadImageToTemp(referenceImagePath);
+                referenceFeatures = referenceFeatureCache.get(painting.getImageRecognitionKey());
             } catch (IllegalStateException e) {
+                scanMetrics.recordOutcome("no_reference_image");
                 return ImageVerificationResponseDTO.builder()
                         .isMatch(false)
                         .confidenceScore(0.0)
                         .message("Er is nog geen referentieafbeelding beschikbaar voor dit schilderij. " +
                                  "De beheerder moet eerst een afbeelding uploaden via het admin paneel.")
                         .build();
+            } finally {
+                scanMetrics.stop(loading, ScanMetrics.STAGE_REFERENCE_FEATURES);
             }
 
-            try {
-                // 3. Perform image comparison
-                double confidenceScore = imageMatchingService.compareImages(userImage, localReferencePath);
-                boolean isMatch = imageMatchingService.isMatchValid(confidenceScore);
-
-                log.info("Image verification - User: {}, Painting: {}, Score: {}, Match: {}",
-                        userId, paintingId, confidenceScore, isMatch);
-
-                if (isMatch) {
-                    // 4. Return painting details
-                    PaintingDetailDTO details = museumService.getPaintingDetails(paintingId);
-
-                    // 5. Record and advance only when this is a new scan on the active stop
-                    if (!alreadyScanned && isCurrentStopPainting) {
-                        recordSuccessfulScan(userId, routeId, paintingId, confidenceScore);
-                        RouteProgressDTO updatedProgress = progressService.advanceToNextStop(userId, routeId);
-
-                        webhookService.fire(WebhookEventType.PAINTING_SCANNED, Map.of(
-                                "userId", userId,
-                                "routeId", routeId,
-                                "paintingId", paintingId,
-                                "paintingTitle", painting.getTitle(),
-                                "paintingArtist", painting.getArtist(),
-                                "confidenceScore", confidenceScore
-                        ));
-
-                        if (updatedProgress.isCompleted()) {
-                            webhookService.fire(WebhookEventType.ROUTE_COMPLETED, Map.of(
-                                    "userId", userId,
-                                    "routeId", routeId,
-                                    "routeName", updatedProgress.getRouteName(),
-                                    "totalStops", updatedProgress.getTotalStops()
-                            ));
-
-                            User user = userRepository.findById(userId)
-                                    .orElseThrow(() -> new RuntimeException("User not found"));
-                            Route route = routeRepository.findById(routeId)
-                                    .orElseThrow(() -> new RuntimeException("Route not found"));
-                            String museumName = route.getMuseum().getName();
-                            String completedAt = LocalDateTime.now()
-                                    .format(DateTimeFormatter.ofPattern("d MMMM yyyy 'om' HH:mm"));
-                            emailService.sendCertificateEmail(
-                                    user,
-                                    updatedProgress.getRouteName(),
-                                    museumName,
-                                    updatedProgress.getTotalStops(),
-                                    completedAt
-                            );
-                        }
-
-                        return ImageVerificationResponseDTO.builder()
-                                .isMatch(true)
-                                .confidenceScore(confidenceScore)
-                                .message("Successfully identified painting!")
-                                .paintingDetails(details)
-                                .build();
-                    }
-
-                    if (alreadyScanned) {
-                        return ImageVerificationResponseDTO.builder()
-                                .isMatch(true)
-                                .confidenceScore(confidenceScore)
-                                .message("Dit schilderij heb je al gevonden.")
-                                .paintingDetails(details)
-                                .build();
-                    }
-
-                    return ImageVerificationResponseDTO.builder()
-                            .isMatch(true)
-                            .confidenceScore(confidenceScore)
-                            .message("Correct gescand, maar dit is niet je huidige stop. Je voortgang blijft ongewijzigd.")
-                            .paintingDetails(details)
-                            .build();
-
-                } else {
-                    return ImageVerificationResponseDTO.builder()
-                            .isMatch(false)
-                            .confidenceScore(confidenceScore)
-                            .message("Image does not match the expected painting. Try again!")
-                            .build();
-                }
+            // 3. Perform image comparison
+            double confidenceScore = imageMatchingService.compareImages(userImage, referenceFeatures);
+            boolean isMatch = imageMatchingService.isMatchValid(confidenceScore);
 
-            } finally {
-                // Cleanup temp file
-                minioStorageService.deleteTempFile(localReferencePath);
+            log.info("Image verification - User: {}, Painting: {}, Score: {}, Match: {}",
+                    userId, paintingId, confidenceScore, isMatch);
+
+            if (!isMatch) {
+                scanMetrics.recordOutcome("no_match");
+                return ImageVerificationResponseDTO.builder()
+                        .isMatch(false)
+                        .confidenceScore(confidenceScore)
+                        .message("Image does not match the expected painting. Try again!")
+                        .build();
             }
 
+            // 4. Record and advance in a transaction of its own
+            return transactionTemplate.execute(status -> recordMatch(userId, routeId, painting, confidenceScore));
+
+        } catch (ImageMatchingBusyException e) {
+            scanMetrics.recordOutcome("busy");
+            throw e;
+
         } catch (Exception e) {
             log.error("Painting verification failed", e);
+            scanMetrics.recordOutcome("error");
             return ImageVerificationResponseDTO.builder()
                     .isMatch(false)
                     .confidenceScore(0.0)
@@ -193,6 +136,93 @@ public class PaintingVerificationService {
         }
     }
 
+    /**
+     * Return the painting details of a matched scan, and record it and advance only when this is a
+     * new scan on the active stop. Progress is read again here: it may have moved while matching.
+     */
+    private ImageVerificationResponseDTO recordMatch(Long userId, Long routeId, Painting painting, double confidenceScore) {
+        Long paintingId = painting.getPaintingId();
+        PaintingDetailDTO details = museumService.getPaintingDetails(paintingId);
+
+        RouteProgressDTO progress = progressService.getOrCreateProgress(userId, routeId);
+        boolean alreadyScanned = scanRepository.existsByUser_IdAndPainting_PaintingIdAndRoute_RouteId(
+                userId, paintingId, routeId
+        );
+        boolean isCurrentStopPainting = !progress.isCompleted()
+                && progress.getCurrentPainting() != null
+                && progress.getCurrentPainting().getPaintingId().equals(paintingId);
+
+        if (!alreadyScanned && isCurrentStopPainting) {
+            Timer.Sample writing = scanMetrics.start();
+            recordSuccessfulScan(userId, routeId, paintingId, confidenceScore);
+            RouteProgressDTO updatedProgress = progressService.advanceToNextStop(userId, routeId);
+            scanMetrics.stop(writing, ScanMetrics.STAGE_DB_WRITE);
+
+            Timer.Sample dispatching = scanMetrics.start();
+            webhookService.fire(WebhookEventType.PAINTING_SCANNED, Map.of(
+                    "userId", userId,
+                    "routeId", routeId,
+                    "paintingId", paintingId,
+                    "paintingTitle", painting.getTitle(),
+                    "paintingArtist", painting.getArtist(),
+                    "confidenceScore", confidenceScore
+            ));
+
+            if (updatedProgress.isCompleted()) {
+                webhookService.fire(WebhookEventType.ROUTE_COMPLETED, Map.of(
+                        "userId", userId,
+                        "routeId", routeId,
+                        "routeName", updatedProgress.getRouteName(),
+                        "totalStops", updatedProgress.getTotalStops()
+                ));
+            }
+            scanMetrics.stop(dispatching, ScanMetrics.STAGE_WEBHOOK_DISPATCH);
+
+            if (updatedProgress.isCompleted()) {
+                User user = userRepository.findById(userId)
+                        .orElseThrow(() -> new RuntimeException("User not found"));
+                Route route = routeRepository.findById(routeId)
+                        .orElseThrow(() -> new RuntimeException("Route not found"));
+                String museumName = route.getMuseum().getName();
+                String completedAt = LocalDateTime.now()
+                        .format(DateTimeFormatter.ofPattern("d MMMM yyyy 'om' HH:mm"));
+                emailService.sendCertificateEmail(
+                        user,
+                        updatedProgress.getRouteName(),
+                        museumName,
+                        updatedProgress.getTotalStops(),
+                        completedAt
+                );
+            }
+
+            scanMetrics.recordOutcome("match");
+            return ImageVerificationResponseDTO.builder()
+                    .isMatch(true)
+                    .confidenceScore(confidenceScore)
+                    .message("Successfully identified painting!")
+                    .paintingDetails(details)
+                    .build();
+        }
+
+        if (alreadyScanned) {
+            scanMetrics.recordOutcome("already_scanned");
+            return ImageVerificationResponseDTO.builder()
+                    .isMatch(true)
+                    .confidenceScore(confidenceScore)
+                    .message("Dit schilderij heb je al gevonden.")
+                    .paintingDetails(details)
+                    .build();
+        }
+
+        scanMetrics.recordOutcome("not_current_stop");
+        return ImageVerificationResponseDTO.builder()
+                .isMatch(true)
+                .confidenceScore(confidenceScore)
+                .message("Correct gescand, maar dit is niet je huidige stop. Je voortgang blijft ongewijzigd.")
+                .paintingDetails(details)
+                .build();
+    }
+
     /**
      * Record successful painting scan
      */
@@ -219,4 +249,7 @@ public class PaintingVerificationService {
         log.info("Recorded successful scan - User: {}, Painting: {}, Score: {}",
                 userId, paintingId, confidenceScore);
     }
+
+    private record ScanTarget(RouteProgressDTO progress, Painting painting) {
+    }
 }
\ No newline at end of file
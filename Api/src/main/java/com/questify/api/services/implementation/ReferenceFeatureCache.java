@@ -0,0 +1,281 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.config.AsyncConfig;
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Local LRU cache of reference painting features, keyed by imageRecognitionKey and bounded by a byte budget.
+ *
+ * Reference images only change when an admin uploads a new one, so keypoints and descriptors
+ * are extracted once at upload time, persisted next to the image in MinIO and reused for every
+ * scan. Entries remember the ETag of the stored features and are periodically revalidated with a
+ * cheap stat call, so an upload handled by another node is picked up without a download per scan.
+ *
+ * Features of a new upload are extracted on the background executor once the upload commits. While
+ * the matcher is saturated the extraction waits for a slot instead of being dropped.
+ */
+@Slf4j
+@Service
+public class ReferenceFeatureCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final int MAX_REFRESH_ATTEMPTS = 10;
+
+    private final ImageMatchingService imageMatchingService;
+    private final MinioStorageService minioStorageService;
+    private final ScanMetrics scanMetrics;
+    private final Executor backgroundExecutor;
+    private final long maxBytes;
+    private final long revalidateAfterMillis;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long generation;
+
+    public ReferenceFeatureCache(
+            ImageMatchingService imageMatchingService,
+            MinioStorageService minioStorageService,
+            ScanMetrics scanMetrics,
+            @Qualifier(AsyncConfig.BACKGROUND_EXECUTOR) Executor backgroundExecutor,
+            @Value("${image.matching.reference-cache.max-bytes:67108864}") long maxBytes,
+            @Value("${image.matching.reference-cache.revalidate-seconds:60}") long revalidateSeconds
+    ) {
+        this.imageMatchingService = imageMatchingService;
+        this.minioStorageService = minioStorageService;
+        this.scanMetrics = scanMetrics;
+        this.backgroundExecutor = backgroundExecutor;
+        this.maxBytes = maxBytes;
+        this.revalidateAfterMillis = revalidateSeconds * 1000;
+    }
+
+    /**
+     * Get the features for a painting, loading the stored features (or extracting them from
+     * the MinIO reference image) on a miss or when the stored version changed
+     *
+     * @param imageRecognitionKey Key of the painting reference image
+     * @throws IllegalStateException if the reference image does not exist in MinIO
+     */
+    public ReferenceFeatures get(String imageRecognitionKey) throws Exception {
+
+        Entry cached;
+        long loadGeneration;
+        synchronized (entries) {
+            cached = entries.get(imageRecognitionKey);
+            loadGeneration = generation;
+        }
+
+        if (cached != null && (!cached.isDue(revalidateAfterMillis) || revalidate(imageRecognitionKey, cached))) {
+            return cached.features;
+        }
+
+        // Load outside the lock so a slow download does not block hits for other paintings
+        Entry loaded = load(imageRecognitionKey);
+
+        synchronized (entries) {
+            // Skip caching if an upload invalidated the cache while we were loading
+            if (loadGeneration == generation) {
+                put(imageRecognitionKey, loaded);
+            }
+        }
+        return loaded.features;
+    }
+
+    /**
+     * Extract and persist the features of a newly uploaded reference image once the current
+     * transaction commits, so a rolled back upload leaves the stored features alone
+     *
+     * @param onRefreshed Run once the new features are in place (or were dropped), e.g. to rebuild indexes
+     */
+    public void refreshAfterCommit(String imageRecognitionKey, byte[] referenceImage, Runnable onRefreshed) {
+        Runnable refresh = () -> backgroundExecutor.execute(() -> {
+            refresh(imageRecognitionKey, referenceImage);
+            onRefreshed.run();
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh.run();
+                }
+            });
+        } else {
+            refresh.run();
+        }
+    }
+
+    /**
+     * Extract and persist the features of a newly uploaded reference image, replacing the stored
+     * features and the cached entry. Waits and tries again while the matcher is busy.
+     */
+    void refresh(String imageRecognitionKey, byte[] referenceImage) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ReferenceFeatures features = imageMatchingService.extractReferenceFeatures(referenceImage);
+                String etag = minioStorageService.uploadReferenceFeatures(imageRecognitionKey, features.toBytes());
+                synchronized (entries) {
+                    // Loads still running may have read the old features; keep them out of the cache
+                    generation++;
+                    put(imageRecognitionKey, new Entry(features, etag));
+                }
+                log.info("Stored {} reference keypoints for key: {}", features.getKeypointCount(), imageRecognitionKey);
+                return;
+            } catch (ImageMatchingBusyException e) {
+                if (attempt == MAX_REFRESH_ATTEMPTS || !sleep(e.getRetryAfterSeconds())) {
+                    break;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to precompute reference features for key {}: {}", imageRecognitionKey, e.getMessage());
+                break;
+            }
+        }
+
+        // The old features belong to the replaced image; drop them so the first scan extracts the new ones
+        try {
+            minioStorageService.deleteReferenceFeatures(imageRecognitionKey);
+            invalidate(imageRecognitionKey);
+            log.warn("Gave up precomputing reference features for key {}, they will be extracted on the first scan", imageRecognitionKey);
+        } catch (Exception e) {
+            log.error("Failed to drop outdated reference features for key {}", imageRecognitionKey, e);
+        }
+    }
+
+    /**
+     * Drop the cached features for a painting, e.g. after its reference image was replaced
+     */
+    public void invalidate(String imageRecognitionKey) {
+        synchronized (entries) {
+            Entry removed = entries.remove(imageRecognitionKey);
+            if (removed != null) {
+                totalBytes -= removed.sizeInBytes();
+            }
+            generation++;
+        }
+        log.info("Invalidated reference features for key: {}", imageRecognitionKey);
+    }
+
+    /**
+     * Check the cached entry against the ETag in MinIO
+     *
+     * @return true if the cached features are still current
+     */
+    private boolean revalidate(String imageRecognitionKey, Entry cached) {
+        try {
+            Optional<String> etag = minioStorageService.getReferenceFeaturesEtag(imageRecognitionKey);
+            if (cached.etag == null && etag.isEmpty()) {
+                // The backfill upload failed and nothing replaced the features since; retry only the upload
+                cached.etag = minioStorageService.uploadReferenceFeatures(imageRecognitionKey, cached.features.toBytes());
+                cached.validatedAt = System.currentTimeMillis();
+                return true;
+            }
+            if (etag.isPresent() && etag.get().equals(cached.etag)) {
+                cached.validatedAt = System.currentTimeMillis();
+                return true;
+            }
+            log.info("Reference features for key {} changed in MinIO, reloading", imageRecognitionKey);
+            return false;
+        } catch (Exception e) {
+            // Serving slightly stale features beats failing the scan while MinIO is unreachable
+            log.warn("Failed to revalidate reference features for key {}: {}", imageRecognitionKey, e.getMessage());
+            cached.validatedAt = System.currentTimeMillis();
+            return true;
+        }
+    }
+
+    private void put(String imageRecognitionKey, Entry entry) {
+        Entry previous = entries.put(imageRecognitionKey, entry);
+        if (previous != null) {
+            totalBytes -= previous.sizeInBytes();
+        }
+        totalBytes += entry.sizeInBytes();
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            if (Objects.equals(evicted.getKey(), imageRecognitionKey)) {
+                continue;
+            }
+            totalBytes -= evicted.getValue().sizeInBytes();
+            eldest.remove();
+        }
+    }
+
+    private Entry load(String imageRecognitionKey) throws Exception {
+
+        Timer.Sample download = scanMetrics.start();
+        Optional<MinioStorageService.StoredObject> stored = minioStorageService.downloadReferenceFeatures(imageRecognitionKey);
+        scanMetrics.stop(download, ScanMetrics.STAGE_MINIO_DOWNLOAD);
+        if (stored.isPresent()) {
+            try {
+                return new Entry(ReferenceFeatures.fromBytes(stored.get().getData()), stored.get().getEtag());
+            } catch (IOException e) {
+                log.warn("Ignoring stored reference features for key {}: {}", imageRecognitionKey, e.getMessage());
+            }
+        }
+
+        ReferenceFeatures features = extractFromReferenceImage(imageRecognitionKey);
+
+        // Backfill so the next cold start can skip extraction for this painting; a failed upload is
+        // retried on revalidation, without extracting again
+        String etag = null;
+        try {
+            etag = minioStorageService.uploadReferenceFeatures(imageRecognitionKey, features.toBytes());
+        } catch (Exception e) {
+            log.warn("Failed to store reference features for key {}: {}", imageRecognitionKey, e.getMessage());
+        }
+        return new Entry(features, etag);
+    }
+
+    private ReferenceFeatures extractFromReferenceImage(String imageRecognitionKey) throws Exception {
+        Timer.Sample download = scanMetrics.start();
+        byte[] referenceImage = minioStorageService.downloadImage("paintings/" + imageRecognitionKey + ".jpg");
+        scanMetrics.stop(download, ScanMetrics.STAGE_MINIO_DOWNLOAD);
+        ReferenceFeatures features = imageMatchingService.extractReferenceFeatures(referenceImage);
+        log.info("Extracted {} reference keypoints for key: {}", features.getKeypointCount(), imageRecognitionKey);
+        return features;
+    }
+
+    private static boolean sleep(int seconds) {
+        try {
+            Thread.sleep(seconds * 1000L);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+        private static class Entry {
+        private final ReferenceFeatures features;
+        private volatile String etag; // null while the backfill upload is pending
+        private volatile long validatedAt = System.currentTimeMillis();
+
+        private Entry(ReferenceFeatures features, String etag) {
+            this.features = features;
+            this.etag = etag;
+        }
+
+        private boolean isDue(long revalidateAfterMillis) {
+            return System.currentTimeMillis() - validatedAt >= revalidateAfterMillis;
+        }
+
+        private long sizeInBytes() {
+            return features.getDescriptors().length + (long) features.getPoints().length * Float.BYTES + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
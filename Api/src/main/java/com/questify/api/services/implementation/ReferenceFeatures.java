@@ -0,0 +1,146 @@
+package com.questify.api.services.implementation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Pre-extracted ORB features of a reference painting image (or of a user photo being looked up).
+ *
+ * Descriptors are kept as a plain byte array instead of a native Mat so cached
+ * entries can be shared between threads and evicted without releasing memory
+ * that another request might still be matching against. Keypoint coordinates are kept alongside
+ * the descriptors for geometric verification.
+ */
+@Getter
+@AllArgsConstructor
+public class ReferenceFeatures {
+
+    private static final int MAGIC = 0x514F5242; // "QORB"
+
+    /**
+     * Bump whenever detector settings or preprocessing change, so stored features are re-extracted
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    private final int keypointCount;
+    private final int rows;
+    private final int cols;
+    private final int type;
+    private final byte[] descriptors;
+    private final float[] points; // x, y of the keypoint behind each descriptor row
+
+    public static ReferenceFeatures empty() {
+        return new ReferenceFeatures(0, 0, 0, 0, new byte[0], new float[0]);
+    }
+
+    public static ReferenceFeatures fromDescriptors(MatOfKeyPoint keypoints, Mat descriptors) {
+        byte[] data = new byte[(int) (descriptors.total() * descriptors.channels())];
+        if (data.length > 0) {
+            descriptors.get(0, 0, data);
+        }
+        return new ReferenceFeatures(
+                keypoints.rows(), descriptors.rows(), descriptors.cols(), descriptors.type(), data, pointsOf(keypoints)
+        );
+    }
+
+    /**
+     * Read the x, y coordinates of detected keypoints without creating a KeyPoint object per point
+     */
+    static float[] pointsOf(MatOfKeyPoint keypoints) {
+        int count = keypoints.rows();
+        float[] points = new float[count * 2];
+        if (count == 0) {
+            return points;
+        }
+        // Each keypoint is stored as 7 floats: x, y, size, angle, response, octave, class_id
+        float[] raw = new float[count * 7];
+        keypoints.get(0, 0, raw);
+        for (int i = 0; i < count; i++) {
+            points[i * 2] = raw[i * 7];
+            points[i * 2 + 1] = raw[i * 7 + 1];
+        }
+        return points;
+    }
+
+    /**
+     * Copy the descriptors into a (possibly reused) native Mat owned by the caller
+     */
+    public void copyDescriptorsTo(Mat target) {
+        target.create(rows, cols, type);
+        if (descriptors.length > 0) {
+            target.put(0, 0, descriptors);
+        }
+    }
+
+    public boolean isEmpty() {
+        return rows == 0 || descriptors.length == 0;
+    }
+
+    public boolean hasPoints() {
+        return rows > 0 && points.length == rows * 2;
+    }
+
+    /**
+     * Serialize to the compact binary format stored next to the reference image in MinIO
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(24 + descriptors.length + points.length * Float.BYTES);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(keypointCount);
+            out.writeInt(rows);
+            out.writeInt(cols);
+            out.writeInt(type);
+            out.write(descriptors);
+            for (float point : points) {
+                out.writeFloat(point);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize reference features", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Parse features written by {@link #toBytes()}
+     *
+     * @throws IOException if the data is corrupt or was written by another format version
+     */
+    public static ReferenceFeatures fromBytes(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a reference feature file");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported reference feature format version: " + version);
+            }
+            int keypointCount = in.readInt();
+            int rows = in.readInt();
+            int cols = in.readInt();
+            int type = in.readInt();
+            byte[] descriptors = new byte[rows * cols];
+            in.readFully(descriptors);
+            float[] points = new float[rows * 2];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = in.readFloat();
+            }
+            if (in.available() > 0) {
+                throw new IOException("Unexpected trailing data in reference feature file");
+            }
+            return new ReferenceFeatures(keypointCount, rows, cols, type, descriptors, points);
+        } catch (EOFException e) {
+            throw new IOException("Truncated reference feature file", e);
+        }
+    }
+}
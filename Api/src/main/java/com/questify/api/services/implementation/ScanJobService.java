@@ -0,0 +1,310 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.dto.response.ImageVerificationResponseDTO;
+import com.questify.api.dto.response.ScanJobDTO;
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import com.questify.api.exceptions.ResourceNotFoundException;
+import com.questify.api.model.ScanJob;
+import com.questify.api.model.enums.ScanJobStatus;
+import com.questify.api.repository.ScanJobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Asynchronous scan verification: the upload returns a job id right away and the verification
+ * runs on a worker pool, so no servlet thread is held for the whole OpenCV pass. Clients poll the
+ * job or subscribe to its status over server-sent events.
+ *
+ * A job runs on the node that accepted the upload, but its state is stored in the scan_jobs table,
+ * so any node behind the load balancer can answer a poll. Event streams of a job running here are
+ * fed directly; streams of a job running on another node are fed by polling the table. Rows are
+ * deleted a while after completion.
+ */
+@Slf4j
+@Service
+public class ScanJobService {
+
+    private final PaintingVerificationService verificationService;
+    private final ScanJobRepository jobRepository;
+    private final JsonMapper jsonMapper;
+    private final ThreadPoolExecutor jobExecutor;
+    private final int busyRetryAfterSeconds;
+    private final long retentionSeconds;
+    private final long sseTimeoutMillis;
+
+    // Jobs running on this node, and the event streams connected to this node by job id
+    private final Set<String> localJobs = ConcurrentHashMap.newKeySet();
+    private final Map<String, JobStream> streams = new ConcurrentHashMap<>();
+
+    public ScanJobService(
+            PaintingVerificationService verificationService,
+            ScanJobRepository jobRepository,
+            JsonMapper jsonMapper,
+            @Value("${image.matching.jobs.threads:0}") int threads,
+            @Value("${image.matching.jobs.queue-capacity:32}") int queueCapacity,
+            @Value("${image.matching.busy-retry-after-seconds:3}") int busyRetryAfterSeconds,
+            @Value("${image.matching.jobs.retention-seconds:300}") long retentionSeconds,
+            @Value("${image.matching.jobs.sse-timeout-seconds:60}") long sseTimeoutSeconds
+    ) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.verificationService = verificationService;
+        this.jobRepository = jobRepository;
+        this.jsonMapper = jsonMapper;
+        this.jobExecutor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("scan-job-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.busyRetryAfterSeconds = busyRetryAfterSeconds;
+        this.retentionSeconds = retentionSeconds;
+        this.sseTimeoutMillis = sseTimeoutSeconds * 1000;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdown();
+    }
+
+    /**
+     * Queue a scan verification and return its job right away
+     *
+     * @throws ImageMatchingBusyException if the job queue is full
+     */
+    public ScanJobDTO submit(Long userId, Long routeId, Long paintingId, byte[] userImage) {
+
+        ScanJob job = jobRepository.save(ScanJob.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(userId)
+                .status(ScanJobStatus.QUEUED)
+                .createdAt(LocalDateTime.now())
+                .build());
+        localJobs.add(job.getId());
+
+        try {
+            jobExecutor.execute(() -> run(job.getId(), userId, routeId, paintingId, userImage));
+        } catch (RejectedExecutionException e) {
+            localJobs.remove(job.getId());
+            jobRepository.deleteById(job.getId());
+            log.warn("Scan job queue full ({} queued), rejecting request", jobExecutor.getQueue().size());
+            throw new ImageMatchingBusyException(
+                    "Het is momenteel erg druk. Probeer het over " + busyRetryAfterSeconds + " seconden opnieuw.",
+                    busyRetryAfterSeconds
+            );
+        }
+
+        return toDTO(job);
+    }
+
+    /**
+     * Current state of a job, including the verification result once it is completed
+     */
+    public ScanJobDTO getJob(String jobId, Long userId) {
+        return toDTO(findJob(jobId, userId));
+    }
+
+    /**
+     * Stream status changes of a job; the stream ends after the COMPLETED event
+     */
+    public SseEmitter subscribe(String jobId, Long userId) {
+
+        findJob(jobId, userId);
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        JobStream stream = streams.computeIfAbsent(jobId, id -> new JobStream());
+        emitter.onCompletion(() -> stream.emitters.remove(emitter));
+        emitter.onTimeout(() -> stream.emitters.remove(emitter));
+        emitter.onError(e -> stream.emitters.remove(emitter));
+
+        stream.lock.lock();
+        try {
+            // Read again under the lock, so an update published in between is not missed
+            ScanJobDTO current = toDTO(findJob(jobId, userId));
+            if (send(emitter, current) && current.getStatus() != ScanJobStatus.COMPLETED) {
+                stream.emitters.add(emitter);
+                stream.lastStatus = current.getStatus();
+            } else {
+                emitter.complete();
+            }
+        } finally {
+            stream.lock.unlock();
+        }
+        return emitter;
+    }
+
+    /**
+     * Push status changes of jobs running on other nodes to the event streams connected here
+     */
+    @Scheduled(fixedDelayString = "${image.matching.jobs.stream-poll-interval-ms:1000}")
+    public void pollRemoteStreams() {
+        List<String> remoteJobIds = streams.keySet().stream()
+                .filter(jobId -> !localJobs.contains(jobId))
+                .toList();
+        if (remoteJobIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, ScanJob> jobs = jobRepository.findAllById(remoteJobIds).stream()
+                .collect(Collectors.toMap(ScanJob::getId, Function.identity()));
+        for (String jobId : remoteJobIds) {
+            ScanJob job = jobs.get(jobId);
+            if (job == null) {
+                // Purged, or the upload was rejected; nothing more will happen
+                closeStream(jobId);
+            } else {
+                publish(toDTO(job));
+            }
+        }
+    }
+
+    /**
+     * Drop completed jobs whose result was kept long enough to be picked up, and unfinished jobs
+     * of a node that went down
+     */
+    @Scheduled(fixedDelay = 60_000)
+    @Transactional
+    public void purgeExpiredJobs() {
+        int purged = jobRepository.deleteExpired(LocalDateTime.now().minusSeconds(retentionSeconds));
+        if (purged > 0) {
+            log.debug("Purged {} expired scan jobs", purged);
+        }
+    }
+
+    private void run(String jobId, Long userId, Long routeId, Long paintingId, byte[] userImage) {
+
+        try {
+            update(jobId, ScanJobStatus.PROCESSING, null);
+
+            ImageVerificationResponseDTO result;
+            try {
+                result = verificationService.verifyPainting(userId, routeId, paintingId, userImage);
+            } catch (ImageMatchingBusyException e) {
+                result = ImageVerificationResponseDTO.builder()
+                        .isMatch(false)
+                        .confidenceScore(0.0)
+                        .message(e.getMessage())
+                        .retryAfterSeconds(e.getRetryAfterSeconds())
+                        .build();
+            } catch (Exception e) {
+                log.error("Scan job {} failed", jobId, e);
+                result = ImageVerificationResponseDTO.builder()
+                        .isMatch(false)
+                        .confidenceScore(0.0)
+                        .message("Verification error: " + e.getMessage())
+                        .build();
+            }
+
+            update(jobId, ScanJobStatus.COMPLETED, result);
+        } catch (Exception e) {
+            // Storing the state failed; the row is purged as unfinished eventually
+            log.error("Failed to update scan job {}", jobId, e);
+        } finally {
+            localJobs.remove(jobId);
+        }
+    }
+
+    private void update(String jobId, ScanJobStatus status, ImageVerificationResponseDTO result) {
+        ScanJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        if (status == ScanJobStatus.COMPLETED) {
+            job.setResult(jsonMapper.writeValueAsString(result));
+            job.setCompletedAt(LocalDateTime.now());
+        }
+        job.setStatus(status);
+        publish(toDTO(jobRepository.save(job)));
+    }
+
+    private void publish(ScanJobDTO dto) {
+        JobStream stream = streams.get(dto.getJobId());
+        if (stream == null) {
+            return;
+        }
+
+        stream.lock.lock();
+        try {
+            if (dto.getStatus() == stream.lastStatus) {
+                return;
+            }
+            stream.lastStatus = dto.getStatus();
+
+            for (SseEmitter emitter : stream.emitters) {
+                if (!send(emitter, dto)) {
+                    stream.emitters.remove(emitter);
+                } else if (dto.getStatus() == ScanJobStatus.COMPLETED) {
+                    emitter.complete();
+                }
+            }
+            if (dto.getStatus() == ScanJobStatus.COMPLETED) {
+                stream.emitters.clear();
+                streams.remove(dto.getJobId(), stream);
+            }
+        } finally {
+            stream.lock.unlock();
+        }
+    }
+
+    private void closeStream(String jobId) {
+        JobStream stream = streams.remove(jobId);
+        if (stream != null) {
+            stream.emitters.forEach(SseEmitter::complete);
+            stream.emitters.clear();
+        }
+    }
+
+    private static boolean send(SseEmitter emitter, ScanJobDTO dto) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(dto));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; polling still works
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private ScanJob findJob(String jobId, Long userId) {
+        return jobRepository.findById(jobId)
+                .filter(job -> job.getUserId().equals(userId))
+                .orElseThrow(() -> new ResourceNotFoundException("Scan job not found with id: " + jobId));
+    }
+
+    private ScanJobDTO toDTO(ScanJob job) {
+        return ScanJobDTO.builder()
+                .jobId(job.getId())
+                .status(job.getStatus())
+                .result(job.getResult() != null ? jsonMapper.readValue(job.getResult(), ImageVerificationResponseDTO.class) : null)
+                .createdAt(job.getCreatedAt())
+                .build();
+    }
+
+    private static class JobStream {
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        // Not synchronized: sending SSE events is blocking I/O and would pin a virtual thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private ScanJobStatus lastStatus;
+    }
+}
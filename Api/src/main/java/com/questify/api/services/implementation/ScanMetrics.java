@@ -0,0 +1,86 @@
+package com.questify.api.services.implementation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer meters for the scan verification pipeline, exposed through /actuator/prometheus.
+ *
+ * - questify.scan.stage (timer, tag stage): time spent per pipeline stage
+ * - questify.scan.confidence (summary): confidence score of every scan and identification
+ * - questify.scan.good.matches (summary): good matches after the ratio test
+ * - questify.scan.outcome (counter, tag outcome): how each verification ended
+ * - questify.scan.escalation (counter, tag stage): ambiguous scans that needed extra matching work
+ */
+@Component
+public class ScanMetrics {
+
+    public static final String STAGE_PROGRESS_LOOKUP = "progress_lookup";
+    public static final String STAGE_REFERENCE_FEATURES = "reference_features";
+    public static final String STAGE_MINIO_DOWNLOAD = "minio_download";
+    public static final String STAGE_QUEUE_WAIT = "queue_wait";
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_FEATURE_EXTRACTION = "feature_extraction";
+    public static final String STAGE_MATCHING = "matching";
+    public static final String STAGE_GEOMETRIC_VERIFICATION = "geometric_verification";
+    public static final String STAGE_DB_WRITE = "db_write";
+    public static final String STAGE_WEBHOOK_DISPATCH = "webhook_dispatch";
+
+    public static final String ESCALATION_FULL_FEATURES = "full_features";
+    public static final String ESCALATION_GEOMETRIC = "geometric";
+
+    private final MeterRegistry registry;
+    private final DistributionSummary confidence;
+    private final DistributionSummary goodMatches;
+
+    public ScanMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.confidence = DistributionSummary.builder("questify.scan.confidence")
+                .description("Confidence score of painting comparisons")
+                .serviceLevelObjectives(0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.65, 0.7, 0.8, 0.9, 1.0)
+                .register(registry);
+        this.goodMatches = DistributionSummary.builder("questify.scan.good.matches")
+                .description("Good ORB matches after Lowe's ratio test")
+                .serviceLevelObjectives(5, 10, 20, 50, 100, 200, 500)
+                .register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage) {
+        sample.stop(Timer.builder("questify.scan.stage")
+                .description("Time spent per scan verification stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void recordConfidence(double score) {
+        confidence.record(score);
+    }
+
+    public void recordGoodMatches(int count) {
+        goodMatches.record(count);
+    }
+
+    public void recordEscalation(String stage) {
+        Counter.builder("questify.scan.escalation")
+                .description("Ambiguous scans escalated to a more expensive matching stage")
+                .tag("stage", stage)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordOutcome(String outcome) {
+        Counter.builder("questify.scan.outcome")
+                .description("Scan verification results")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,109 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.config.AsyncConfig;
+import com.questify.api.model.WebhookDelivery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drains the webhook outbox.
+ *
+ * New events are picked up right after the transaction that queued them commits; a periodic poll
+ * covers retries that came due and anything queued on a node that went down before delivering.
+ * Both only hand the drain to the webhook executor, so slow endpoints never hold up the scheduler
+ * thread shared with the other @Scheduled jobs.
+ */
+@Slf4j
+@Service
+public class WebhookDispatcher {
+
+    private static final long LEASE_MARGIN_SECONDS = 30;
+
+    private final WebhookService webhookService;
+    private final Executor webhookExecutor;
+    private final int batchSize;
+    private final long leaseSeconds;
+    private final int retentionDays;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    public WebhookDispatcher(
+            WebhookService webhookService,
+            @Qualifier(AsyncConfig.WEBHOOK_EXECUTOR) Executor webhookExecutor,
+            @Value("${webhook.outbox.batch-size:50}") int batchSize,
+            @Value("${webhook.outbox.lease-seconds:150}") long leaseSeconds,
+            @Value("${webhook.outbox.retention-days:7}") int retentionDays
+    ) {
+        // A lease that ends mid-delivery lets another node claim and send the same rows again
+        long minimumLeaseSeconds = WebhookService.MAX_DELIVERY_MILLIS / 1000 + LEASE_MARGIN_SECONDS;
+        if (leaseSeconds < minimumLeaseSeconds) {
+            throw new IllegalStateException("webhook.outbox.lease-seconds must be at least " + minimumLeaseSeconds);
+        }
+        this.webhookService = webhookService;
+        this.webhookExecutor = webhookExecutor;
+        this.batchSize = batchSize;
+        this.leaseSeconds = leaseSeconds;
+        this.retentionDays = retentionDays;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWebhookQueued(WebhookService.WebhookQueuedEvent event) {
+        requestDrain();
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.outbox.poll-interval-ms:5000}")
+    public void poll() {
+        requestDrain();
+    }
+
+    /**
+     * Every night at 04:15 (Europe/Brussels) — drop delivered rows older than the retention period
+     */
+    @Scheduled(cron = "0 15 4 * * *", zone = "Europe/Brussels")
+    public void purgeDelivered() {
+        int purged = webhookService.purgeDelivered(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Purged {} delivered webhook deliveries", purged);
+    }
+
+    private void requestDrain() {
+        requested.set(true);
+        if (!draining.get()) {
+            webhookExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        // One drain per node at a time; a request arriving meanwhile is handled by the running drain
+        while (requested.get() && draining.compareAndSet(false, true)) {
+            try {
+                requested.set(false);
+                int claimed;
+                do {
+                    claimed = dispatchBatch();
+                } while (claimed == batchSize);
+            } catch (Exception e) {
+                log.error("Webhook outbox drain failed", e);
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private int dispatchBatch() {
+        List<WebhookDelivery> claimed = webhookService.claimDue(batchSize, leaseSeconds);
+        if (!claimed.isEmpty()) {
+            webhookService.complete(webhookService.send(claimed));
+        }
+        return claimed.size();
+    }
+}
@@ -1,76 +1,548 @@
 package com.questify.api.services.implementation;
 
+import com.questify.api.exceptions.ResourceNotFoundException;
+import com.questify.api.model.WebhookDelivery;
 import com.questify.api.model.WebhookSubscription;
+import com.questify.api.model.enums.WebhookDeliveryStatus;
 import com.questify.api.model.enums.WebhookEventType;
+import com.questify.api.repository.WebhookDeliveryRepository;
 import com.questify.api.repository.WebhookSubscriptionRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpStatusCodeException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Webhook events go through a transactional outbox: {@link #fire} only writes one
+ * {@link WebhookDelivery} row per active subscription, in the transaction of the change that
+ * triggered the event. The {@link WebhookDispatcher} delivers those rows after commit and retries
+ * failures with exponential backoff until they are delivered or marked DEAD.
+ *
+ * Deliveries of a batch run concurrently on pooled keep-alive HTTP clients, so a batch takes as
+ * long as its slowest endpoint instead of the sum of all of them. Connect and read timeouts can be
+ * set per subscription, up to {@link #MAX_CONNECT_TIMEOUT_MS} and {@link #MAX_READ_TIMEOUT_MS}, so a
+ * delivery always ends well within the dispatcher's lease; HTTP clients are shared per connect
+ * timeout, since the JDK client only supports that setting per client.
+ *
+ * Every request carries X-Questify-Timestamp and, when the subscription has a secret,
+ * X-Questify-Signature: "sha256=" + hex HMAC-SHA256 of timestamp + "." + body, so receivers can
+ * verify the sender and reject replays without calling back.
+ *
+ * Subscriptions can opt in to batching: their events wait up to batchWindowSeconds (or until
+ * batchMaxEvents are queued) and are delivered as one JSON array. Batching subscriptions that share
+ * a URL and secret are batched together, and with coalesceEvents redundant events in a batch are merged.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class WebhookService {
 
+    private static final String TIMESTAMP_HEADER = "X-Questify-Timestamp";
+    private static final String SIGNATURE_HEADER = "X-Questify-Signature";
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+    public static final int MAX_CONNECT_TIMEOUT_MS = 30_000;
+    public static final int MAX_READ_TIMEOUT_MS = 60_000;
+
+    /**
+     * Longest a single delivery can take before it times out
+     */
+    public static final long MAX_DELIVERY_MILLIS = MAX_CONNECT_TIMEOUT_MS + MAX_READ_TIMEOUT_MS;
+
     private final WebhookSubscriptionRepository subscriptionRepository;
-    private final RestTemplate restTemplate;
+    private final WebhookSubscriptionRegistry subscriptionRegistry;
+    private final WebhookDeliveryRepository deliveryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JsonMapper jsonMapper;
+    private final int defaultConnectTimeoutMs;
+    private final int defaultReadTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffSeconds;
+    private final long maxBackoffSeconds;
+    private final int defaultBatchMaxEvents;
+    private final Map<Integer, HttpClient> clientsByConnectTimeout = new ConcurrentHashMap<>();
+
+    public WebhookService(
+            WebhookSubscriptionRepository subscriptionRepository,
+            WebhookSubscriptionRegistry subscriptionRegistry,
+            WebhookDeliveryRepository deliveryRepository,
+            ApplicationEventPublisher eventPublisher,
+            JsonMapper jsonMapper,
+            @Value("${webhook.http.connect-timeout-ms:2000}") int defaultConnectTimeoutMs,
+            @Value("${webhook.http.read-timeout-ms:5000}") int defaultReadTimeoutMs,
+            @Value("${webhook.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${webhook.outbox.initial-backoff-seconds:10}") long initialBackoffSeconds,
+            @Value("${webhook.outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+            @Value("${webhook.batch.max-events:50}") int defaultBatchMaxEvents
+    ) {
+        if (defaultConnectTimeoutMs > MAX_CONNECT_TIMEOUT_MS || defaultReadTimeoutMs > MAX_READ_TIMEOUT_MS) {
+            throw new IllegalStateException("webhook.http timeouts may not exceed " + MAX_CONNECT_TIMEOUT_MS
+                    + " ms (connect) and " + MAX_READ_TIMEOUT_MS + " ms (read)");
+        }
+        this.subscriptionRepository = subscriptionRepository;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.deliveryRepository = deliveryRepository;
+        this.eventPublisher = eventPublisher;
+        this.jsonMapper = jsonMapper;
+        this.defaultConnectTimeoutMs = defaultConnectTimeoutMs;
+        this.defaultReadTimeoutMs = defaultReadTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffSeconds = initialBackoffSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.defaultBatchMaxEvents = defaultBatchMaxEvents;
+    }
 
-    @Async
+    /**
+     * Queue an event for every active subscription. Joins the caller's transaction, so the event
+     * is stored if and only if the triggering change is committed.
+     */
+    @Transactional
     public void fire(WebhookEventType eventType, Map<String, Object> data) {
-        List<WebhookSubscription> subscriptions = subscriptionRepository.findByEventTypeAndActiveTrue(eventType);
+        List<WebhookSubscription> subscriptions = subscriptionRegistry.forEvent(eventType);
 
         if (subscriptions.isEmpty()) return;
 
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("event", eventType.name());
-        payload.put("timestamp", OffsetDateTime.now().toString());
-        payload.put("data", data);
+        // Serialize once, every subscriber gets the same body
+        String payload = serialize(eventType, data);
+        LocalDateTime now = LocalDateTime.now();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
+        deliveryRepository.saveAll(subscriptions.stream()
+                .map(subscription -> WebhookDelivery.builder()
+                        .subscriptionId(subscription.getId())
+                        .eventType(eventType)
+                        .payload(payload)
+                        .status(WebhookDeliveryStatus.PENDING)
+                        .nextAttemptAt(subscription.isBatching() ? now.plusSeconds(subscription.getBatchWindowSeconds()) : now)
+                        .build())
+                .toList());
 
+        // A batch that reached its size limit goes out now instead of waiting for its window
         for (WebhookSubscription subscription : subscriptions) {
-            try {
-                ResponseEntity<String> response = restTemplate.postForEntity(subscription.getUrl(), request, String.class);
-                log.info("Webhook fired: {} -> {} (status: {})", eventType, subscription.getUrl(), response.getStatusCode());
-            } catch (HttpStatusCodeException e) {
-                log.warn("Webhook delivery failed for {} with HTTP {}: {}", subscription.getUrl(), e.getStatusCode(), e.getResponseBodyAsString());
-            } catch (Exception e) {
-                log.warn("Webhook delivery failed for {}: {}", subscription.getUrl(), e.getMessage());
+            if (subscription.isBatching()) {
+                List<WebhookSubscription> group = subscriptionRegistry.batchGroup(subscription.getUrl());
+                List<Long> groupIds = group.stream().map(WebhookSubscription::getId).toList();
+                if (deliveryRepository.countQueued(groupIds) >= batchMaxEvents(group)) {
+                    deliveryRepository.makeQueuedDue(groupIds, now);
+                }
             }
         }
+
+        eventPublisher.publishEvent(new WebhookQueuedEvent());
     }
 
     public Map<String, Object> test(WebhookSubscription subscription) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("event", subscription.getEventType().name());
-        payload.put("timestamp", OffsetDateTime.now().toString());
-        payload.put("data", Map.of("test", true, "message", "Questify webhook test"));
+        String payload = serialize(subscription.getEventType(), Map.of("test", true, "message", "Questify webhook test"));
+
+        try {
+            HttpResponse<String> response = post(subscription, payload).join();
+            return Map.of("success", isSuccess(response.statusCode()), "status", response.statusCode(), "body", response.body() != null ? response.body() : "");
+        } catch (CompletionException e) {
+            return Map.of("success", false, "status", 0, "body", rootMessage(e));
+        }
+    }
+
+    /**
+     * Lock due deliveries and push their next attempt out by the lease, so other nodes skip them
+     * while they are being sent. A node that dies mid-delivery leaves them to be retried after the lease.
+     *
+     * When a delivery of a batching subscription is due, the rest of its batch is claimed with it.
+     */
+    @Transactional
+    public List<WebhookDelivery> claimDue(int batchSize, long leaseSeconds) {
+        LocalDateTime now = LocalDateTime.now();
+        List<WebhookDelivery> claimed = new ArrayList<>(deliveryRepository.findDueForUpdate(now, PageRequest.of(0, batchSize)));
+
+        Set<Long> claimedIds = claimed.stream().map(WebhookDelivery::getId).collect(Collectors.toSet());
+        Set<String> batchUrls = subscriptionsOf(claimed).values().stream()
+                .filter(subscription -> subscription.isActive() && subscription.isBatching())
+                .map(WebhookSubscription::getUrl)
+                .collect(Collectors.toSet());
+
+        for (String url : batchUrls) {
+            List<WebhookSubscription> group = subscriptionRegistry.batchGroup(url);
+            List<Long> groupIds = group.stream().map(WebhookSubscription::getId).toList();
+            for (WebhookDelivery delivery : deliveryRepository.findPendingForUpdate(groupIds, PageRequest.of(0, batchMaxEvents(group)))) {
+                if (claimedIds.add(delivery.getId())) {
+                    claimed.add(delivery);
+                }
+            }
+        }
+
+        for (WebhookDelivery delivery : claimed) {
+            delivery.setAttempts(delivery.getAttempts() + 1);
+            delivery.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+        }
+        return claimed;
+    }
+
+    /**
+     * Send claimed deliveries concurrently and wait for all of them
+     */
+    public List<DeliveryResult> send(List<WebhookDelivery> deliveries) {
+
+        Map<Long, WebhookSubscription> subscriptions = subscriptionsOf(deliveries);
+        Map<BatchKey, List<WebhookDelivery>> batches = new LinkedHashMap<>();
+
+        List<CompletableFuture<List<DeliveryResult>>> results = new ArrayList<>();
+        for (WebhookDelivery delivery : deliveries) {
+            WebhookSubscription subscription = subscriptions.get(delivery.getSubscriptionId());
+            if (subscription == null || !subscription.isActive()) {
+                String reason = subscription == null ? "Subscription deleted" : "Subscription inactive";
+                results.add(CompletableFuture.completedFuture(List.of(new DeliveryResult(delivery.getId(), null, reason, true, results.size()))));
+            } else if (subscription.isBatching()) {
+                // One request is signed with one secret, so only subscriptions sharing it share a request
+                batches.computeIfAbsent(new BatchKey(subscription.getUrl(), subscription.getSecret()), key -> new ArrayList<>()).add(delivery);
+            } else {
+                results.add(deliver(List.of(delivery), subscription, delivery.getPayload(), delivery.getEventType().name(), results.size()));
+            }
+        }
+
+        for (List<WebhookDelivery> batch : batches.values()) {
+            // Claim order mixes due rows with the rest of their batch; events go out in the order they were fired
+            batch.sort(Comparator.comparing(WebhookDelivery::getId));
+            List<WebhookSubscription> group = batch.stream()
+                    .map(delivery -> subscriptions.get(delivery.getSubscriptionId()))
+                    .distinct()
+                    .toList();
+            int maxEvents = batchMaxEvents(group);
+            boolean coalesce = group.stream().allMatch(WebhookSubscription::isCoalesceEvents);
+
+            for (int from = 0; from < batch.size(); from += maxEvents) {
+                List<WebhookDelivery> chunk = batch.subList(from, Math.min(batch.size(), from + maxEvents));
+                String payload = coalesce ? coalesce(chunk) : joinAsArray(chunk);
+                results.add(deliver(chunk, group.get(0), payload, "batch of " + chunk.size(), results.size()));
+            }
+        }
+
+        return results.stream().flatMap(result -> result.join().stream()).toList();
+    }
+
+    /**
+     * Mark deliveries as delivered, schedule a retry with exponential backoff, or give up (DEAD).
+     * Rows sent in one request share one backoff, so a failed batch is retried as a batch.
+     */
+    @Transactional
+    public void complete(List<DeliveryResult> results) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, WebhookDelivery> deliveries = deliveryRepository.findAllById(
+                results.stream().map(DeliveryResult::deliveryId).toList()
+        ).stream().collect(Collectors.toMap(WebhookDelivery::getId, Function.identity()));
+
+        // Backed off from the most attempted row of each request
+        Map<Integer, Integer> attemptsByRequest = new HashMap<>();
+        for (DeliveryResult result : results) {
+            WebhookDelivery delivery = deliveries.get(result.deliveryId());
+            if (delivery != null) {
+                attemptsByRequest.merge(result.request(), delivery.getAttempts(), Math::max);
+            }
+        }
+        Map<Integer, LocalDateTime> retryAtByRequest = new HashMap<>();
+
+        for (DeliveryResult result : results) {
+            WebhookDelivery delivery = deliveries.get(result.deliveryId());
+            if (delivery == null) {
+                continue;
+            }
+
+            delivery.setLastStatusCode(result.statusCode());
+            if (result.error() == null) {
+                delivery.setStatus(WebhookDeliveryStatus.DELIVERED);
+                delivery.setDeliveredAt(now);
+                delivery.setLastError(null);
+                continue;
+            }
+
+            delivery.setLastError(truncate(result.error()));
+            if (result.permanent() || delivery.getAttempts() >= maxAttempts) {
+                delivery.setStatus(WebhookDeliveryStatus.DEAD);
+                log.warn("Webhook delivery {} is dead after {} attempts: {}", delivery.getId(), delivery.getAttempts(), result.error());
+            } else {
+                delivery.setNextAttemptAt(retryAtByRequest.computeIfAbsent(result.request(),
+                        request -> now.plusSeconds(backoffSeconds(attemptsByRequest.get(request)))));
+            }
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<WebhookDelivery> getDeliveries(WebhookDeliveryStatus status, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        return status != null
+                ? deliveryRepository.findByStatusOrderByIdDesc(status, page)
+                : deliveryRepository.findAllByOrderByIdDesc(page);
+    }
+
+    @Transactional(readOnly = true)
+    public WebhookDelivery getDelivery(Long id) {
+        return deliveryRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Webhook delivery not found with id: " + id));
+    }
+
+    /**
+     * Queue a delivery again with a fresh retry budget, whatever its current status
+     */
+    @Transactional
+    public WebhookDelivery replay(Long id) {
+        WebhookDelivery delivery = getDelivery(id);
+        resetForReplay(delivery);
+        eventPublisher.publishEvent(new WebhookQueuedEvent());
+        return delivery;
+    }
+
+    /**
+     * Queue every dead delivery again, e.g. after a subscriber fixed its endpoint
+     */
+    @Transactional
+    public int replayDead() {
+        List<WebhookDelivery> dead = deliveryRepository.findByStatus(WebhookDeliveryStatus.DEAD);
+        dead.forEach(this::resetForReplay);
+        if (!dead.isEmpty()) {
+            eventPublisher.publishEvent(new WebhookQueuedEvent());
+        }
+        return dead.size();
+    }
+
+    @Transactional
+    public int purgeDelivered(LocalDateTime before) {
+        return deliveryRepository.deleteDeliveredBefore(before);
+    }
+
+    private void resetForReplay(WebhookDelivery delivery) {
+        delivery.setStatus(WebhookDeliveryStatus.PENDING);
+        delivery.setAttempts(0);
+        delivery.setNextAttemptAt(LocalDateTime.now());
+        delivery.setDeliveredAt(null);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
+    /**
+     * Post one payload on behalf of one or more outbox rows; all rows share the outcome
+     */
+    private CompletableFuture<List<DeliveryResult>> deliver(
+            List<WebhookDelivery> deliveries,
+            WebhookSubscription subscription,
+            String payload,
+            String description,
+            int request
+    ) {
+        return post(subscription, payload)
+                .thenApply(response -> {
+                    int status = response.statusCode();
+                    if (isSuccess(status)) {
+                        log.info("Webhook fired: {} -> {} (status: {})", description, subscription.getUrl(), status);
+                        return resultsFor(deliveries, status, null, false, request);
+                    }
+                    log.warn("Webhook delivery failed for {} with HTTP {}: {}", subscription.getUrl(), status, response.body());
+                    return resultsFor(deliveries, status, "HTTP " + status, isPermanentFailure(status), request);
+                })
+                .exceptionally(e -> {
+                    log.warn("Webhook delivery failed for {}: {}", subscription.getUrl(), rootMessage(e));
+                    return resultsFor(deliveries, null, rootMessage(e), false, request);
+                });
+    }
+
+    private static List<DeliveryResult> resultsFor(List<WebhookDelivery> deliveries, Integer status, String error, boolean permanent, int request) {
+        return deliveries.stream()
+                .map(delivery -> new DeliveryResult(delivery.getId(), status, error, permanent, request))
+                .toList();
+    }
+
+    private static String joinAsArray(List<WebhookDelivery> batch) {
+        // Payloads are already JSON objects, no need to parse them again
+        return batch.stream().map(WebhookDelivery::getPayload).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * Merge redundant events of a batch into a JSON array:
+     * - only the latest LEADERBOARD_UPDATE is kept
+     * - a PAINTING_SCANNED followed by a ROUTE_COMPLETED for the same user and route is moved into
+     *   that ROUTE_COMPLETED event, under "mergedEvents"
+     */
+    String coalesce(List<WebhookDelivery> batch) {
+        List<ObjectNode> events = batch.stream()
+                .map(delivery -> (ObjectNode) jsonMapper.readTree(delivery.getPayload()))
+                .toList();
+
+        int latestLeaderboard = -1;
+        for (int i = 0; i < events.size(); i++) {
+            if (isEvent(events.get(i), WebhookEventType.LEADERBOARD_UPDATE)) {
+                latestLeaderboard = i;
+            }
+        }
+
+        Map<Integer, List<ObjectNode>> merged = new HashMap<>();
+        List<ObjectNode> kept = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            ObjectNode event = events.get(i);
+            if (isEvent(event, WebhookEventType.LEADERBOARD_UPDATE) && i != latestLeaderboard) {
+                continue;
+            }
+            if (isEvent(event, WebhookEventType.PAINTING_SCANNED)) {
+                int completion = findRouteCompletion(events, i, event);
+                if (completion >= 0) {
+                    merged.computeIfAbsent(completion, index -> new ArrayList<>()).add(event);
+                    continue;
+                }
+            }
+            if (merged.containsKey(i)) {
+                event.putArray("mergedEvents").addAll(merged.get(i));
+            }
+            kept.add(event);
+        }
+
+        return jsonMapper.writeValueAsString(kept);
+    }
+
+    private static int findRouteCompletion(List<ObjectNode> events, int after, ObjectNode scan) {
+        JsonNode userId = scan.path("data").path("userId");
+        JsonNode routeId = scan.path("data").path("routeId");
+        for (int i = after + 1; i < events.size(); i++) {
+            ObjectNode event = events.get(i);
+            if (isEvent(event, WebhookEventType.ROUTE_COMPLETED)
+                    && userId.equals(event.path("data").path("userId"))
+                    && routeId.equals(event.path("data").path("routeId"))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isEvent(JsonNode event, WebhookEventType eventType) {
+        return eventType.name().equals(event.path("event").asString());
+    }
+
+    private Map<Long, WebhookSubscription> subscriptionsOf(List<WebhookDelivery> deliveries) {
+        Set<Long> subscriptionIds = deliveries.stream().map(WebhookDelivery::getSubscriptionId).collect(Collectors.toSet());
+        return subscriptionRepository.findAllById(subscriptionIds).stream()
+                .collect(Collectors.toMap(WebhookSubscription::getId, Function.identity()));
+    }
+
+    private int batchMaxEvents(List<WebhookSubscription> group) {
+        return group.stream()
+                .map(WebhookSubscription::getBatchMaxEvents)
+                .filter(Objects::nonNull)
+                .min(Integer::compare)
+                .orElse(defaultBatchMaxEvents);
+    }
+
+    long backoffSeconds(int attempts) {
+        // 10s, 20s, 40s, ... capped, with jitter so failed bursts do not retry in lockstep
+        double backoff = Math.min(maxBackoffSeconds, initialBackoffSeconds * Math.pow(2, attempts - 1));
+        return Math.round(backoff * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
 
+    private CompletableFuture<HttpResponse<String>> post(WebhookSubscription subscription, String payload) {
+        // Clamped as well, for subscriptions stored before the limits were validated
+        int connectTimeoutMs = subscription.getConnectTimeoutMs() != null
+                ? Math.min(subscription.getConnectTimeoutMs(), MAX_CONNECT_TIMEOUT_MS) : defaultConnectTimeoutMs;
+        int readTimeoutMs = subscription.getReadTimeoutMs() != null
+                ? Math.min(subscription.getReadTimeoutMs(), MAX_READ_TIMEOUT_MS) : defaultReadTimeoutMs;
+
+        try {
+            // Encode once; the same bytes are signed and sent
+            byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+            String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(subscription.getUrl()))
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(TIMESTAMP_HEADER, timestamp)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+            if (subscription.getSecret() != null) {
+                request.header(SIGNATURE_HEADER, "sha256=" + sign(subscription.getSecret(), timestamp, body));
+            }
+            return client(connectTimeoutMs).sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String sign(String secret, String timestamp, byte[] body) {
         try {
-            ResponseEntity<String> response = restTemplate.postForEntity(subscription.getUrl(), request, String.class);
-            return Map.of("success", true, "status", response.getStatusCode().value(), "body", response.getBody() != null ? response.getBody() : "");
-        } catch (HttpStatusCodeException e) {
-            return Map.of("success", false, "status", e.getStatusCode().value(), "body", e.getResponseBodyAsString());
-        } catch (Exception e) {
-            return Map.of("success", false, "status", 0, "body", e.getMessage());
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM));
+            mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '.');
+            return HexFormat.of().formatHex(mac.doFinal(body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign webhook payload", e);
+        }
+    }
+
+    private HttpClient client(int connectTimeoutMs) {
+        return clientsByConnectTimeout.computeIfAbsent(connectTimeoutMs, timeout -> HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeout))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    private String serialize(WebhookEventType eventType, Map<String, Object> data) {
+        return jsonMapper.writeValueAsString(new Payload(eventType.name(), OffsetDateTime.now().toString(), data));
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    // Client errors will not fix themselves by retrying, except timeouts and rate limiting
+    private static boolean isPermanentFailure(int status) {
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > 1024 ? error.substring(0, 1024) : error;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
         }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * @param request Index of the request the delivery was sent in, shared by the rows of a batch
+     */
+    public record DeliveryResult(Long deliveryId, Integer statusCode, String error, boolean permanent, int request) {
+    }
+
+    private record BatchKey(String url, String secret) {
+    }
+
+    /**
+     * Wire format of a single event; fields are written in this order
+     */
+    record Payload(String event, String timestamp, Map<String, Object> data) {
+    }
+
+    /**
+     * Published when deliveries were queued; the dispatcher drains the outbox once the transaction commits
+     */
+    public record WebhookQueuedEvent() {
     }
 }
@@ -0,0 +1,80 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.model.WebhookSubscription;
+import com.questify.api.model.enums.WebhookEventType;
+import com.questify.api.repository.WebhookSubscriptionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory view of the active webhook subscriptions, so firing an event does not query the database.
+ *
+ * Subscriptions change rarely: the registry is reloaded whenever WebhookAdminController changes one,
+ * and periodically to pick up changes made through another node.
+ */
+@Slf4j
+@Component
+public class WebhookSubscriptionRegistry {
+
+    private final WebhookSubscriptionRepository subscriptionRepository;
+    private volatile Snapshot snapshot;
+
+    public WebhookSubscriptionRegistry(WebhookSubscriptionRepository subscriptionRepository) {
+        this.subscriptionRepository = subscriptionRepository;
+    }
+
+    /**
+     * Active subscriptions to an event type, empty when nobody listens
+     */
+    public List<WebhookSubscription> forEvent(WebhookEventType eventType) {
+        return snapshot().byEventType().getOrDefault(eventType, List.of());
+    }
+
+    /**
+     * Active batching subscriptions posting to a URL, which share one batch
+     */
+    public List<WebhookSubscription> batchGroup(String url) {
+        return snapshot().batchGroups().getOrDefault(url, List.of());
+    }
+
+    @Scheduled(
+            initialDelayString = "${webhook.subscriptions.refresh-interval-ms:60000}",
+            fixedDelayString = "${webhook.subscriptions.refresh-interval-ms:60000}"
+    )
+    public void refresh() {
+        List<WebhookSubscription> active = subscriptionRepository.findAll().stream()
+                .filter(WebhookSubscription::isActive)
+                .toList();
+
+        Map<WebhookEventType, List<WebhookSubscription>> byEventType = new EnumMap<>(WebhookEventType.class);
+        byEventType.putAll(active.stream().collect(Collectors.groupingBy(WebhookSubscription::getEventType, Collectors.toUnmodifiableList())));
+
+        Map<String, List<WebhookSubscription>> batchGroups = active.stream()
+                .filter(WebhookSubscription::isBatching)
+                .collect(Collectors.groupingBy(WebhookSubscription::getUrl, Collectors.toUnmodifiableList()));
+
+        snapshot = new Snapshot(byEventType, batchGroups);
+        log.debug("Loaded {} active webhook subscriptions", active.size());
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private record Snapshot(
+            Map<WebhookEventType, List<WebhookSubscription>> byEventType,
+            Map<String, List<WebhookSubscription>> batchGroups
+    ) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.questify.api.util;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Random URL-safe tokens for activation links, password resets and webhook secrets
+ */
+public final class SecureTokens {
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private SecureTokens() {
+    }
+
+    /**
+     * @return 256 random bits, Base64url-encoded without padding
+     */
+    public static String generate() {
+        byte[] randomBytes = new byte[32];
+        secureRandom.nextBytes(randomBytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+    }
+}
@@ -0,0 +1,64 @@
+package com.questify.api.config.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void neverMissesAnAddedValue() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<String> added = randomIds(10_000);
+        added.forEach(filter::add);
+
+        assertThat(added).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void staysNearTheTargetFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        randomIds(10_000).forEach(filter::add);
+
+        long falsePositives = randomIds(100_000).stream().filter(filter::mightContain).count();
+        assertThat(falsePositives).isLessThan(2_000); // 2%, twice the target
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(0, 0.01);
+
+        assertThat(filter.mightContain("")).isFalse();
+        assertThat(filter.mightContain(UUID.randomUUID().toString())).isFalse();
+    }
+
+    @Test
+    void concurrentAddsAreAllVisible() {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        List<List<String>> perThread = List.of(randomIds(10_000), randomIds(10_000), randomIds(10_000), randomIds(10_000));
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(perThread.size())) {
+            for (List<String> ids : perThread) {
+                executor.submit(() -> ids.forEach(filter::add));
+            }
+        }
+
+        for (List<String> ids : perThread) {
+            assertThat(ids).allMatch(filter::mightContain);
+        }
+    }
+
+    private static List<String> randomIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,128 @@
+package com.questify.api.config.security;
+
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.questify.api.model.JwtSigningKey;
+import com.questify.api.repository.JwtSigningKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class JwtKeyRingTest {
+
+    private final List<JwtSigningKey> stored = new ArrayList<>();
+    private final JwtSigningKeyRepository repository = mock(JwtSigningKeyRepository.class);
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findAllByOrderByCreatedAtAsc()).thenAnswer(call -> new ArrayList<>(stored));
+        when(repository.save(any(JwtSigningKey.class))).thenAnswer(call -> {
+            JwtSigningKey key = call.getArgument(0);
+            key.setCreatedAt(LocalDateTime.now());
+            stored.add(key);
+            return key;
+        });
+        doAnswer(call -> stored.removeAll(call.<Collection<?>>getArgument(0))).when(repository).deleteAll(anyCollection());
+    }
+
+    @Test
+    void signsWithTheFirstKeyRightAwayOnAFreshInstall() {
+        JwtKeyRing keyRing = keyRing();
+
+        JwtKeyRing.SigningKey signingKey = keyRing.signingKey();
+
+        assertThat(stored).hasSize(1);
+        assertThat(signingKey.kid()).isEqualTo(stored.getFirst().getKid());
+        assertThat(keyRing.publicKeys().getKeys()).hasSize(1);
+    }
+
+    @Test
+    void publishesARotatedKeyBeforeSigningWithIt() throws Exception {
+        JwtSigningKey current = key(LocalDateTime.now().minusDays(31));
+        stored.add(current);
+        JwtKeyRing keyRing = keyRing();
+
+        keyRing.refresh();
+
+        assertThat(stored).hasSize(2);
+        String rotatedKid = stored.getLast().getKid();
+        assertThat(keyRing.signingKey().kid()).isEqualTo(current.getKid());
+        assertThat(keyRing.verifier(rotatedKid)).isNotNull();
+        assertThat(keyRing.publicKeys().getKeyByKeyId(rotatedKid)).isNotNull();
+    }
+
+    @Test
+    void switchesToTheRotatedKeyOncePublishedLongEnough() throws Exception {
+        JwtSigningKey previous = key(LocalDateTime.now().minusDays(31));
+        JwtSigningKey rotated = key(LocalDateTime.now().minusMinutes(61));
+        stored.addAll(List.of(previous, rotated));
+
+        JwtKeyRing keyRing = keyRing();
+
+        assertThat(keyRing.signingKey().kid()).isEqualTo(rotated.getKid());
+        assertThat(keyRing.verifier(previous.getKid())).isNotNull();
+    }
+
+    @Test
+    void deletesKeysThatCanNoLongerHaveSignedAValidToken() throws Exception {
+        JwtSigningKey retired = key(LocalDateTime.now().minusDays(40));
+        JwtSigningKey current = key(LocalDateTime.now().minusDays(20));
+        stored.addAll(List.of(retired, current));
+
+        JwtKeyRing keyRing = keyRing();
+        keyRing.refresh();
+
+        assertThat(stored).containsExactly(current);
+        assertThat(keyRing.verifier(retired.getKid())).isNull();
+    }
+
+    @Test
+    void reloadsOnceForAKidGeneratedByAnotherNode() throws Exception {
+        stored.add(key(LocalDateTime.now().minusDays(1)));
+        JwtKeyRing keyRing = keyRing();
+        keyRing.refresh();
+        clearInvocations(repository);
+
+        JwtSigningKey other = key(LocalDateTime.now());
+        stored.add(other);
+
+        assertThat(keyRing.verifier(other.getKid())).isNotNull();
+        verify(repository, times(1)).findAllByOrderByCreatedAtAsc();
+
+        // Unknown kids right after are rejected without reloading again
+        assertThat(keyRing.verifier(UUID.randomUUID().toString())).isNull();
+        verify(repository, times(1)).findAllByOrderByCreatedAtAsc();
+    }
+
+    @Test
+    void rejectsAPublishAheadShorterThanTheRefreshInterval() {
+        assertThatThrownBy(() -> new JwtKeyRing(repository, 30, 1, 300_000, 30))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("publish-ahead");
+    }
+
+    private JwtKeyRing keyRing() {
+        return new JwtKeyRing(repository, 30, 60, 300_000, 30);
+    }
+
+    private static JwtSigningKey key(LocalDateTime createdAt) throws Exception {
+        ECKey ecKey = new ECKeyGenerator(Curve.P_256).keyID(UUID.randomUUID().toString()).generate();
+        return JwtSigningKey.builder()
+                .kid(ecKey.getKeyID())
+                .jwk(ecKey.toJSONString())
+                .createdAt(createdAt)
+                .build();
+    }
+}
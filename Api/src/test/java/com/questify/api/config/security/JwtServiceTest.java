@@ -0,0 +1,109 @@
+package com.questify.api.config.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.questify.api.model.JwtSigningKey;
+import com.questify.api.model.enums.UserType;
+import com.questify.api.repository.JwtSigningKeyRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    @Test
+    void verifiesTheClaimsOfAnIssuedToken() throws Exception {
+        JwtService jwtService = hs256Service(SECRET);
+
+        VerifiedToken access = jwtService.verify(jwtService.generateToken(42, UserType.ADMIN, 3)).orElseThrow();
+        VerifiedToken refresh = jwtService.verify(jwtService.generateRefreshToken(42, UserType.ADMIN, 3)).orElseThrow();
+
+        assertThat(access.userId()).isEqualTo(42);
+        assertThat(access.role()).isEqualTo(UserType.ADMIN);
+        assertThat(access.tokenVersion()).isEqualTo(3);
+        assertThat(access.tokenId()).isNotBlank();
+        assertThat(access.isAccessToken()).isTrue();
+        assertThat(refresh.isRefreshToken()).isTrue();
+        assertThat(refresh.tokenId()).isNotEqualTo(access.tokenId());
+    }
+
+    @Test
+    void answersARepeatedTokenFromTheCache() throws Exception {
+        JwtService jwtService = hs256Service(SECRET);
+        String token = jwtService.generateToken(42, UserType.USER, 0);
+
+        VerifiedToken first = jwtService.verify(token).orElseThrow();
+
+        assertThat(jwtService.verify(token)).containsSame(first);
+    }
+
+    @Test
+    void rejectsForgedTamperedAndMalformedTokens() throws Exception {
+        JwtService jwtService = hs256Service(SECRET);
+        String forged = hs256Service("another-secret-another-secret-00").generateToken(42, UserType.ADMIN, 0);
+        String token = jwtService.generateToken(42, UserType.USER, 0);
+        String[] parts = token.split("\\.");
+        String tampered = parts[0] + "." + hs256Service(SECRET).generateToken(43, UserType.USER, 0).split("\\.")[1] + "." + parts[2];
+
+        assertThat(jwtService.verify(forged)).isEmpty();
+        assertThat(jwtService.verify(tampered)).isEmpty();
+        assertThat(jwtService.verify("not-a-token")).isEmpty();
+    }
+
+    @Test
+    void rejectsExpiredTokensEvenWithAValidSignature() throws Exception {
+        SignedJWT expired = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject("42")
+                .claim("role", "USER")
+                .claim("type", "access")
+                .expirationTime(new Date(System.currentTimeMillis() - 1000))
+                .build());
+        expired.sign(new MACSigner(SECRET));
+
+        assertThat(hs256Service(SECRET).verify(expired.serialize())).isEmpty();
+    }
+
+    @Test
+    void acceptsHs256TokensAfterSwitchingToEs256OnlyWhenAllowed() throws Exception {
+        String legacy = hs256Service(SECRET).generateToken(42, UserType.USER, 0);
+
+        JwtService strict = es256Service(false);
+        JwtService transition = es256Service(true);
+
+        assertThat(strict.verify(legacy)).isEmpty();
+        assertThat(transition.verify(legacy)).isPresent();
+        assertThat(strict.verify(strict.generateToken(42, UserType.USER, 0))).isPresent();
+    }
+
+    private static JwtService hs256Service(String secret) throws Exception {
+        return new JwtService(secret, 100, false, Optional.empty());
+    }
+
+    private static JwtService es256Service(boolean acceptLegacyHs256) throws Exception {
+        List<JwtSigningKey> stored = new ArrayList<>();
+        JwtSigningKeyRepository repository = mock(JwtSigningKeyRepository.class);
+        when(repository.findAllByOrderByCreatedAtAsc()).thenAnswer(call -> new ArrayList<>(stored));
+        when(repository.save(any(JwtSigningKey.class))).thenAnswer(call -> {
+            JwtSigningKey key = call.getArgument(0);
+            key.setCreatedAt(LocalDateTime.now());
+            stored.add(key);
+            return key;
+        });
+        JwtKeyRing keyRing = new JwtKeyRing(repository, 30, 60, 300_000, 30);
+        return new JwtService(SECRET, 100, acceptLegacyHs256, Optional.of(keyRing));
+    }
+}
@@ -0,0 +1,81 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.User;
+import com.questify.api.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PrincipalCacheTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    @Test
+    void loadsAUserOnceWithinTheTtl() {
+        User user = user(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        PrincipalCache cache = new PrincipalCache(userRepository, 30, 10);
+
+        assertThat(cache.get(1L)).containsSame(user);
+        assertThat(cache.get(1L)).containsSame(user);
+
+        verify(userRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void reloadsAfterTheTtl() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user(1L)));
+        PrincipalCache cache = new PrincipalCache(userRepository, 0, 10);
+
+        cache.get(1L);
+        cache.get(1L);
+
+        verify(userRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void reloadsAnEvictedUser() {
+        User before = user(1L);
+        User after = user(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(before), Optional.of(after));
+        PrincipalCache cache = new PrincipalCache(userRepository, 30, 10);
+
+        cache.get(1L);
+        cache.evict(1L);
+
+        assertThat(cache.get(1L)).containsSame(after);
+    }
+
+    @Test
+    void doesNotCacheAMissingUser() {
+        User created = user(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.empty(), Optional.of(created));
+        PrincipalCache cache = new PrincipalCache(userRepository, 30, 10);
+
+        assertThat(cache.get(1L)).isEmpty();
+        assertThat(cache.get(1L)).containsSame(created);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedUserWhenFull() {
+        when(userRepository.findById(anyLong())).thenAnswer(call -> Optional.of(user(call.getArgument(0))));
+        PrincipalCache cache = new PrincipalCache(userRepository, 30, 2);
+
+        cache.get(1L);
+        cache.get(2L);
+        cache.get(1L);
+        cache.get(3L); // Evicts 2, used longest ago
+        cache.get(1L);
+        cache.get(2L);
+
+        verify(userRepository, times(1)).findById(1L);
+        verify(userRepository, times(2)).findById(2L);
+    }
+
+    private static User user(Long id) {
+        return User.builder().id(id).build();
+    }
+}
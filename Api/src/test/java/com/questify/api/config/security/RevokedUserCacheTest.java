@@ -0,0 +1,87 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.User;
+import com.questify.api.model.enums.UserType;
+import com.questify.api.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RevokedUserCacheTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final RevokedUserCache cache = new RevokedUserCache(userRepository);
+
+    @Test
+    void rejectsEveryTokenUntilLoaded() {
+        when(userRepository.findByTokenVersionChangedAtAfterOrUserType(any(), eq(UserType.BLACKLISTED)))
+                .thenThrow(new DataAccessResourceFailureException("database down"))
+                .thenReturn(List.of());
+
+        assertThat(cache.isRevoked(1L, 0)).isTrue();
+
+        cache.load();
+        assertThat(cache.isRevoked(1L, 0)).isTrue();
+
+        cache.reload();
+        assertThat(cache.isRevoked(1L, 0)).isFalse();
+    }
+
+    @Test
+    void rejectsTokensIssuedBeforeAVersionBump() {
+        when(userRepository.findByTokenVersionChangedAtAfterOrUserType(any(), eq(UserType.BLACKLISTED)))
+                .thenReturn(List.of(user(1L, UserType.USER, 2)));
+        cache.load();
+
+        assertThat(cache.isRevoked(1L, 1)).isTrue();
+        assertThat(cache.isRevoked(1L, 2)).isFalse();
+        assertThat(cache.isRevoked(2L, 0)).isFalse();
+    }
+
+    @Test
+    void rejectsEveryTokenOfABlacklistedUser() {
+        when(userRepository.findByTokenVersionChangedAtAfterOrUserType(any(), eq(UserType.BLACKLISTED)))
+                .thenReturn(List.of(user(1L, UserType.BLACKLISTED, 0)));
+        cache.load();
+
+        assertThat(cache.isRevoked(1L, 0)).isTrue();
+        assertThat(cache.isRevoked(1L, 100)).isTrue();
+    }
+
+    @Test
+    void appliesLocalChangesBeforeTheNextReload() {
+        when(userRepository.findByTokenVersionChangedAtAfterOrUserType(any(), eq(UserType.BLACKLISTED)))
+                .thenReturn(List.of());
+        cache.load();
+
+        cache.update(user(1L, UserType.USER, 1));
+        assertThat(cache.isRevoked(1L, 0)).isTrue();
+        assertThat(cache.isRevoked(1L, 1)).isFalse();
+
+        cache.update(user(1L, UserType.BLACKLISTED, 1));
+        assertThat(cache.isRevoked(1L, 1)).isTrue();
+    }
+
+    @Test
+    void dropsUsersNoLongerListedOnReload() {
+        when(userRepository.findByTokenVersionChangedAtAfterOrUserType(any(), eq(UserType.BLACKLISTED)))
+                .thenReturn(List.of(user(1L, UserType.BLACKLISTED, 0)))
+                .thenReturn(List.of());
+        cache.load();
+
+        cache.reload();
+
+        assertThat(cache.isRevoked(1L, 0)).isFalse();
+    }
+
+    private static User user(Long id, UserType userType, int tokenVersion) {
+        return User.builder().id(id).userType(userType).tokenVersion(tokenVersion).build();
+    }
+}
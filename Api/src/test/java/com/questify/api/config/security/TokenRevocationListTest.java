@@ -0,0 +1,92 @@
+package com.questify.api.config.security;
+
+import com.questify.api.model.RevokedToken;
+import com.questify.api.model.enums.UserType;
+import com.questify.api.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class TokenRevocationListTest {
+
+    private final RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+    private final TokenRevocationList revocationList = new TokenRevocationList(repository, 1000);
+
+    @Test
+    void checksUnrevokedTokensWithoutTheDatabase() {
+        assertThat(revocationList.isRevoked(token("a"))).isFalse();
+        assertThat(revocationList.isRevoked(token(null))).isFalse();
+
+        verify(repository, never()).existsByJti(anyString());
+    }
+
+    @Test
+    void rejectsATokenRevokedOnThisNodeRightAway() {
+        revocationList.revoke(token("a"));
+
+        assertThat(revocationList.isRevoked(token("a"))).isTrue();
+        assertThat(revocationList.isRevoked(token("b"))).isFalse();
+        verify(repository).save(any(RevokedToken.class));
+        verify(repository, never()).existsByJti(anyString());
+    }
+
+    @Test
+    void picksUpRevocationsOfOtherNodesOnReload() {
+        when(repository.findUnexpiredJtis(any())).thenReturn(List.of("a"));
+        when(repository.existsByJti("a")).thenReturn(true);
+
+        assertThat(revocationList.isRevoked(token("a"))).isFalse();
+        revocationList.reload();
+
+        assertThat(revocationList.isRevoked(token("a"))).isTrue();
+        assertThat(revocationList.isRevoked(token("a"))).isTrue();
+        verify(repository, times(1)).existsByJti("a");
+    }
+
+    @Test
+    void confirmsFilterHitsAgainstTheTable() {
+        // Listed when the filter was built, purged since: the filter hit must not reject the token
+        when(repository.findUnexpiredJtis(any())).thenReturn(List.of("a"));
+        when(repository.existsByJti("a")).thenReturn(false);
+        revocationList.reload();
+
+        assertThat(revocationList.isRevoked(token("a"))).isFalse();
+        assertThat(revocationList.isRevoked(token("a"))).isFalse();
+        verify(repository, times(1)).existsByJti("a");
+    }
+
+    @Test
+    void keepsLocalRevocationsAcrossAReload() {
+        when(repository.findUnexpiredJtis(any())).thenReturn(List.of());
+        when(repository.existsByJti("a")).thenReturn(true);
+        revocationList.revoke(token("a"));
+
+        // Table read before the revocation was committed
+        revocationList.reload();
+
+        assertThat(revocationList.isRevoked(token("a"))).isTrue();
+    }
+
+    @Test
+    void ignoresRepeatedRevocationsAndTokensWithoutId() {
+        when(repository.save(any(RevokedToken.class))).thenReturn(null).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        revocationList.revoke(token("a"));
+        revocationList.revoke(token("a"));
+        revocationList.revoke(token(null));
+
+        assertThat(revocationList.isRevoked(token("a"))).isTrue();
+        verify(repository, times(2)).save(any(RevokedToken.class));
+    }
+
+    private static VerifiedToken token(String jti) {
+        return new VerifiedToken(jti, 1L, UserType.USER, "access", 0, new Date(System.currentTimeMillis() + 60_000));
+    }
+}
@@ -0,0 +1,95 @@
+package com.questify.api.services.implementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PaintingIndexTest {
+
+    private static final int DESCRIPTOR_BYTES = 32;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void votesForThePaintingTheQueryDescriptorsCameFrom() {
+        List<ReferenceFeatures> paintings = List.of(randomFeatures(300), randomFeatures(300), randomFeatures(300));
+        PaintingIndex index = new PaintingIndex(List.of(10L, 20L, 30L), paintings);
+
+        List<PaintingIndex.Candidate> candidates = index.query(withFlippedBits(paintings.get(1), 4), 3);
+
+        assertThat(candidates).isNotEmpty();
+        assertThat(candidates.getFirst().paintingId()).isEqualTo(20L);
+        assertThat(candidates.getFirst().features()).isSameAs(paintings.get(1));
+        assertThat(candidates.getFirst().votes()).isGreaterThan(150);
+    }
+
+    @Test
+    void returnsCandidatesMostVotesFirstUpToTheLimit() {
+        List<ReferenceFeatures> paintings = List.of(randomFeatures(200), randomFeatures(200), randomFeatures(200));
+        PaintingIndex index = new PaintingIndex(List.of(1L, 2L, 3L), paintings);
+
+        // Mostly painting 3, some of painting 1, nothing of painting 2
+        ReferenceFeatures query = concat(firstRows(paintings.get(2), 120), firstRows(paintings.get(0), 40));
+
+        List<PaintingIndex.Candidate> candidates = index.query(query, 3);
+        assertThat(candidates).extracting(PaintingIndex.Candidate::paintingId).containsExactly(3L, 1L);
+        assertThat(candidates.get(0).votes()).isGreaterThan(candidates.get(1).votes());
+
+        assertThat(index.query(query, 1)).extracting(PaintingIndex.Candidate::paintingId).containsExactly(3L);
+    }
+
+    @Test
+    void unrelatedDescriptorsGetNoCandidates() {
+        PaintingIndex index = new PaintingIndex(List.of(1L, 2L), List.of(randomFeatures(200), randomFeatures(200)));
+
+        assertThat(index.query(randomFeatures(200), 3)).isEmpty();
+    }
+
+    @Test
+    void ignoresEmptyQueriesAndNonOrbDescriptors() {
+        ReferenceFeatures notOrb = new ReferenceFeatures(10, 10, 16, 0, new byte[160], new float[20]);
+        PaintingIndex index = new PaintingIndex(List.of(1L, 2L), List.of(randomFeatures(100), notOrb));
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.query(ReferenceFeatures.empty(), 3)).isEmpty();
+        assertThat(index.query(notOrb, 3)).isEmpty();
+        assertThat(new PaintingIndex(List.of(), List.of()).query(randomFeatures(10), 3)).isEmpty();
+    }
+
+    private ReferenceFeatures randomFeatures(int rows) {
+        byte[] descriptors = new byte[rows * DESCRIPTOR_BYTES];
+        random.nextBytes(descriptors);
+        return features(rows, descriptors);
+    }
+
+    private ReferenceFeatures withFlippedBits(ReferenceFeatures source, int bitsPerRow) {
+        byte[] descriptors = source.getDescriptors().clone();
+        for (int row = 0; row < source.getRows(); row++) {
+            for (int i = 0; i < bitsPerRow; i++) {
+                int bit = random.nextInt(DESCRIPTOR_BYTES * 8);
+                descriptors[row * DESCRIPTOR_BYTES + bit / 8] ^= (byte) (1 << (bit % 8));
+            }
+        }
+        return features(source.getRows(), descriptors);
+    }
+
+    private static ReferenceFeatures firstRows(ReferenceFeatures source, int rows) {
+        byte[] descriptors = new byte[rows * DESCRIPTOR_BYTES];
+        System.arraycopy(source.getDescriptors(), 0, descriptors, 0, descriptors.length);
+        return features(rows, descriptors);
+    }
+
+    private static ReferenceFeatures concat(ReferenceFeatures a, ReferenceFeatures b) {
+        byte[] descriptors = new byte[a.getDescriptors().length + b.getDescriptors().length];
+        System.arraycopy(a.getDescriptors(), 0, descriptors, 0, a.getDescriptors().length);
+        System.arraycopy(b.getDescriptors(), 0, descriptors, a.getDescriptors().length, b.getDescriptors().length);
+        return features(a.getRows() + b.getRows(), descriptors);
+    }
+
+    private static ReferenceFeatures features(int rows, byte[] descriptors) {
+        return new ReferenceFeatures(rows, rows, DESCRIPTOR_BYTES, 0, descriptors, new float[rows * 2]);
+    }
+}
@@ -0,0 +1,121 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ReferenceFeatureCacheTest {
+
+    private static final String KEY = "nachtwacht";
+    private static final byte[] IMAGE = {1, 2, 3};
+
+    private final ImageMatchingService imageMatchingService = mock(ImageMatchingService.class);
+    private final MinioStorageService minioStorageService = mock(MinioStorageService.class);
+    private final ReferenceFeatureCache cache = new ReferenceFeatureCache(imageMatchingService, minioStorageService,
+            new ScanMetrics(new SimpleMeterRegistry()), Runnable::run, 1 << 20, 60);
+
+    @Test
+    void waitsForTheBusyMatcherInsteadOfDroppingANewUpload() throws Exception {
+        ReferenceFeatures features = features();
+        when(imageMatchingService.extractReferenceFeatures(IMAGE))
+                .thenThrow(new ImageMatchingBusyException("busy", 0))
+                .thenThrow(new ImageMatchingBusyException("busy", 0))
+                .thenReturn(features);
+        when(minioStorageService.uploadReferenceFeatures(eq(KEY), any())).thenReturn("etag-1");
+        AtomicBoolean refreshed = new AtomicBoolean();
+
+        cache.refreshAfterCommit(KEY, IMAGE, () -> refreshed.set(true));
+
+        assertThat(refreshed).isTrue();
+        assertThat(cache.get(KEY)).isSameAs(features);
+        verify(imageMatchingService, times(3)).extractReferenceFeatures(IMAGE);
+        verify(minioStorageService, never()).deleteReferenceFeatures(anyString());
+        verify(minioStorageService, never()).downloadReferenceFeatures(anyString());
+    }
+
+    @Test
+    void dropsTheOutdatedFeaturesWhenExtractionKeepsFailing() throws Exception {
+        when(imageMatchingService.extractReferenceFeatures(IMAGE)).thenThrow(new ImageMatchingBusyException("busy", 0));
+        AtomicBoolean refreshed = new AtomicBoolean();
+
+        cache.refreshAfterCommit(KEY, IMAGE, () -> refreshed.set(true));
+
+        assertThat(refreshed).isTrue();
+        verify(minioStorageService).deleteReferenceFeatures(KEY);
+        verify(minioStorageService, never()).uploadReferenceFeatures(anyString(), any());
+    }
+
+    @Test
+    void forgetsTheCachedFeaturesOfTheReplacedImageWhenExtractionFails() throws Exception {
+        ReferenceFeatures stored = features();
+        when(minioStorageService.downloadReferenceFeatures(KEY))
+                .thenReturn(Optional.of(new MinioStorageService.StoredObject(stored.toBytes(), "etag-0")));
+        when(imageMatchingService.extractReferenceFeatures(IMAGE)).thenThrow(new IllegalStateException("corrupt image"));
+        cache.get(KEY);
+
+        cache.refreshAfterCommit(KEY, IMAGE, () -> { });
+        cache.get(KEY);
+
+        verify(minioStorageService).deleteReferenceFeatures(KEY);
+        verify(minioStorageService, times(2)).downloadReferenceFeatures(KEY);
+    }
+
+    @Test
+    void retriesOnlyTheFailedBackfillUploadOnRevalidation() throws Exception {
+        ReferenceFeatureCache revalidating = cacheRevalidatingEverySecond();
+        ReferenceFeatures extracted = features();
+        when(minioStorageService.downloadReferenceFeatures(KEY)).thenReturn(Optional.empty());
+        when(minioStorageService.downloadImage(anyString())).thenReturn(IMAGE);
+        when(imageMatchingService.extractReferenceFeatures(IMAGE)).thenReturn(extracted);
+        when(minioStorageService.uploadReferenceFeatures(eq(KEY), any()))
+                .thenThrow(new IllegalStateException("MinIO unreachable"))
+                .thenReturn("etag-1");
+        when(minioStorageService.getReferenceFeaturesEtag(KEY)).thenReturn(Optional.empty(), Optional.of("etag-1"));
+
+        revalidating.get(KEY);
+        Thread.sleep(1100);
+        assertThat(revalidating.get(KEY)).isSameAs(extracted);
+        Thread.sleep(1100);
+        assertThat(revalidating.get(KEY)).isSameAs(extracted);
+
+        verify(imageMatchingService, times(1)).extractReferenceFeatures(IMAGE);
+        verify(minioStorageService, times(2)).uploadReferenceFeatures(eq(KEY), any());
+    }
+
+    @Test
+    void loadsFeaturesAnotherNodeStoredWhileTheBackfillWasPending() throws Exception {
+        ReferenceFeatureCache revalidating = cacheRevalidatingEverySecond();
+        ReferenceFeatures stored = features();
+        when(minioStorageService.downloadReferenceFeatures(KEY))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new MinioStorageService.StoredObject(stored.toBytes(), "etag-2")));
+        when(minioStorageService.downloadImage(anyString())).thenReturn(IMAGE);
+        when(imageMatchingService.extractReferenceFeatures(IMAGE)).thenReturn(features());
+        when(minioStorageService.uploadReferenceFeatures(eq(KEY), any())).thenThrow(new IllegalStateException("MinIO unreachable"));
+        when(minioStorageService.getReferenceFeaturesEtag(KEY)).thenReturn(Optional.of("etag-2"));
+
+        revalidating.get(KEY);
+        Thread.sleep(1100);
+        revalidating.get(KEY);
+
+        verify(minioStorageService, times(2)).downloadReferenceFeatures(KEY);
+        verify(minioStorageService, times(1)).uploadReferenceFeatures(eq(KEY), any());
+    }
+
+    private ReferenceFeatureCache cacheRevalidatingEverySecond() {
+        return new ReferenceFeatureCache(imageMatchingService, minioStorageService,
+                new ScanMetrics(new SimpleMeterRegistry()), Runnable::run, 1 << 20, 1);
+    }
+
+    private static ReferenceFeatures features() {
+        return new ReferenceFeatures(1, 1, 32, 0, new byte[32], new float[2]);
+    }
+}
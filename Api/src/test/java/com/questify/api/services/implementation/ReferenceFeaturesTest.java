@@ -0,0 +1,79 @@
+package com.questify.api.services.implementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReferenceFeaturesTest {
+
+    @Test
+    void roundTripsDescriptorsAndPoints() throws IOException {
+        Random random = new Random(7);
+        byte[] descriptors = new byte[5 * 32];
+        random.nextBytes(descriptors);
+        float[] points = new float[5 * 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextFloat() * 1000;
+        }
+        ReferenceFeatures original = new ReferenceFeatures(6, 5, 32, 0, descriptors, points);
+
+        ReferenceFeatures parsed = ReferenceFeatures.fromBytes(original.toBytes());
+
+        assertThat(parsed.getKeypointCount()).isEqualTo(6);
+        assertThat(parsed.getRows()).isEqualTo(5);
+        assertThat(parsed.getCols()).isEqualTo(32);
+        assertThat(parsed.getType()).isZero();
+        assertThat(parsed.getDescriptors()).isEqualTo(descriptors);
+        assertThat(parsed.getPoints()).isEqualTo(points);
+        assertThat(parsed.hasPoints()).isTrue();
+    }
+
+    @Test
+    void roundTripsEmptyFeatures() throws IOException {
+        ReferenceFeatures parsed = ReferenceFeatures.fromBytes(ReferenceFeatures.empty().toBytes());
+
+        assertThat(parsed.isEmpty()).isTrue();
+        assertThat(parsed.hasPoints()).isFalse();
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        byte[] data = new ReferenceFeatures(1, 1, 32, 0, new byte[32], new float[2]).toBytes();
+
+        assertThatThrownBy(() -> ReferenceFeatures.fromBytes(Arrays.copyOf(data, data.length - 1)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Truncated");
+    }
+
+    @Test
+    void rejectsTrailingData() {
+        byte[] data = ReferenceFeatures.empty().toBytes();
+
+        assertThatThrownBy(() -> ReferenceFeatures.fromBytes(Arrays.copyOf(data, data.length + 1)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("trailing");
+    }
+
+    @Test
+    void rejectsOtherFilesAndFormatVersions() {
+        byte[] data = ReferenceFeatures.empty().toBytes();
+
+        byte[] otherMagic = data.clone();
+        otherMagic[0] ^= 1;
+        assertThatThrownBy(() -> ReferenceFeatures.fromBytes(otherMagic))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Not a reference feature file");
+
+        byte[] otherVersion = data.clone();
+        ByteBuffer.wrap(otherVersion).putInt(4, ReferenceFeatures.FORMAT_VERSION - 1);
+        assertThatThrownBy(() -> ReferenceFeatures.fromBytes(otherVersion))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("format version");
+    }
+}
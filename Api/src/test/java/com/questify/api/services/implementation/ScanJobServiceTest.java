@@ -0,0 +1,190 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.dto.response.ImageVerificationResponseDTO;
+import com.questify.api.dto.response.ScanJobDTO;
+import com.questify.api.exceptions.ImageMatchingBusyException;
+import com.questify.api.exceptions.ResourceNotFoundException;
+import com.questify.api.model.ScanJob;
+import com.questify.api.model.enums.ScanJobStatus;
+import com.questify.api.repository.ScanJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ScanJobServiceTest {
+
+    private static final long USER_ID = 1L;
+    private static final byte[] IMAGE = {1, 2, 3};
+
+    private final Map<String, ScanJob> rows = new ConcurrentHashMap<>();
+    private final ScanJobRepository jobRepository = mock(ScanJobRepository.class);
+    private final PaintingVerificationService verificationService = mock(PaintingVerificationService.class);
+    private ScanJobService scanJobService;
+
+    @BeforeEach
+    void setUp() {
+        when(jobRepository.save(any(ScanJob.class))).thenAnswer(call -> {
+            ScanJob job = call.getArgument(0);
+            rows.put(job.getId(), job);
+            return job;
+        });
+        when(jobRepository.findById(anyString())).thenAnswer(call -> Optional.ofNullable(rows.get(call.<String>getArgument(0))));
+        when(jobRepository.findAllById(anyIterable())).thenAnswer(call -> {
+            Iterable<String> ids = call.getArgument(0);
+            List<ScanJob> found = new java.util.ArrayList<>();
+            ids.forEach(id -> Optional.ofNullable(rows.get(id)).ifPresent(found::add));
+            return found;
+        });
+        doAnswer(call -> rows.remove(call.<String>getArgument(0))).when(jobRepository).deleteById(anyString());
+
+        scanJobService = new ScanJobService(verificationService, jobRepository, JsonMapper.builder().build(), 1, 1, 3, 300, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scanJobService.shutdown();
+    }
+
+    @Test
+    void storesTheJobAndItsResultOnceCompleted() throws Exception {
+        when(verificationService.verifyPainting(USER_ID, 2L, 3L, IMAGE)).thenReturn(ImageVerificationResponseDTO.builder()
+                .isMatch(true)
+                .confidenceScore(0.9)
+                .message("Successfully identified painting!")
+                .build());
+
+        ScanJobDTO submitted = scanJobService.submit(USER_ID, 2L, 3L, IMAGE);
+        assertThat(submitted.getStatus()).isEqualTo(ScanJobStatus.QUEUED);
+        assertThat(rows).containsKey(submitted.getJobId());
+
+        ScanJobDTO completed = awaitCompletion(submitted.getJobId());
+        assertThat(completed.getResult().isMatch()).isTrue();
+        assertThat(completed.getResult().getConfidenceScore()).isEqualTo(0.9);
+        assertThat(rows.get(submitted.getJobId()).getCompletedAt()).isNotNull();
+    }
+
+    @Test
+    void onlyTheOwnerCanSeeAJob() throws Exception {
+        ScanJobDTO submitted = scanJobService.submit(USER_ID, 2L, 3L, IMAGE);
+        awaitCompletion(submitted.getJobId());
+
+        assertThatThrownBy(() -> scanJobService.getJob(submitted.getJobId(), 99L))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> scanJobService.getJob("unknown", USER_ID))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void aJobStoredByAnotherNodeCanBePolledHere() {
+        rows.put("remote", ScanJob.builder()
+                .id("remote")
+                .userId(USER_ID)
+                .status(ScanJobStatus.COMPLETED)
+                .result("{\"match\":false,\"confidenceScore\":0.1,\"message\":\"Try again!\"}")
+                .createdAt(LocalDateTime.now())
+                .completedAt(LocalDateTime.now())
+                .build());
+
+        ScanJobDTO job = scanJobService.getJob("remote", USER_ID);
+
+        assertThat(job.getStatus()).isEqualTo(ScanJobStatus.COMPLETED);
+        assertThat(job.getResult().getMessage()).isEqualTo("Try again!");
+    }
+
+    @Test
+    void busyMatcherCompletesTheJobWithARetryHint() throws Exception {
+        when(verificationService.verifyPainting(USER_ID, 2L, 3L, IMAGE)).thenThrow(new ImageMatchingBusyException("Druk", 3));
+
+        ScanJobDTO completed = awaitCompletion(scanJobService.submit(USER_ID, 2L, 3L, IMAGE).getJobId());
+
+        assertThat(completed.getResult().isMatch()).isFalse();
+        assertThat(completed.getResult().getRetryAfterSeconds()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsAndForgetsJobsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(verificationService.verifyPainting(any(), any(), any(), any())).thenAnswer(call -> {
+            release.await(5, TimeUnit.SECONDS);
+            return ImageVerificationResponseDTO.builder().message("done").build();
+        });
+
+        // One running, one queued, the third does not fit
+        String running = scanJobService.submit(USER_ID, 2L, 3L, IMAGE).getJobId();
+        awaitStatus(running, ScanJobStatus.PROCESSING);
+        String queued = scanJobService.submit(USER_ID, 2L, 3L, IMAGE).getJobId();
+
+        assertThatThrownBy(() -> scanJobService.submit(USER_ID, 2L, 3L, IMAGE))
+                .isInstanceOf(ImageMatchingBusyException.class);
+        assertThat(rows.keySet()).containsExactlyInAnyOrder(running, queued);
+
+        release.countDown();
+        awaitCompletion(queued);
+    }
+
+    @Test
+    void purgesJobsOlderThanTheRetention() {
+        when(jobRepository.deleteExpired(any())).thenReturn(2);
+
+        scanJobService.purgeExpiredJobs();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(jobRepository).deleteExpired(cutoff.capture());
+        assertThat(cutoff.getValue()).isCloseTo(LocalDateTime.now().minusSeconds(300), within(5, java.time.temporal.ChronoUnit.SECONDS));
+    }
+
+    @Test
+    void remoteStreamsStopPollingOnceTheJobCompleted() {
+        ScanJob remote = ScanJob.builder()
+                .id("remote")
+                .userId(USER_ID)
+                .status(ScanJobStatus.PROCESSING)
+                .createdAt(LocalDateTime.now())
+                .build();
+        rows.put("remote", remote);
+
+        scanJobService.subscribe("remote", USER_ID);
+        scanJobService.pollRemoteStreams();
+        verify(jobRepository, times(1)).findAllById(anyIterable());
+
+        remote.setStatus(ScanJobStatus.COMPLETED);
+        remote.setResult("{\"match\":true,\"confidenceScore\":0.8,\"message\":\"ok\"}");
+        scanJobService.pollRemoteStreams();
+        scanJobService.pollRemoteStreams();
+
+        verify(jobRepository, times(2)).findAllById(anyIterable());
+    }
+
+    private ScanJobDTO awaitCompletion(String jobId) throws InterruptedException {
+        return awaitStatus(jobId, ScanJobStatus.COMPLETED);
+    }
+
+    private ScanJobDTO awaitStatus(String jobId, ScanJobStatus status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        ScanJobDTO job = scanJobService.getJob(jobId, USER_ID);
+        while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = scanJobService.getJob(jobId, USER_ID);
+        }
+        assertThat(job.getStatus()).isEqualTo(status);
+        return job;
+    }
+}
@@ -0,0 +1,121 @@
+package com.questify.api.services.implementation;
+
+import com.questify.api.model.WebhookDelivery;
+import com.questify.api.repository.WebhookDeliveryRepository;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebhookServiceTest {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final WebhookService webhookService = new WebhookService(
+            null, null, null, null, jsonMapper, 2000, 5000, 8, 10, 3600, 50
+    );
+
+    @Test
+    void keepsOnlyTheLatestLeaderboardUpdate() {
+        JsonNode events = coalesce(
+                delivery("LEADERBOARD_UPDATE", "{\"version\":1}"),
+                delivery("PAINTING_SCANNED", "{\"userId\":1,\"routeId\":2,\"paintingId\":3}"),
+                delivery("LEADERBOARD_UPDATE", "{\"version\":2}")
+        );
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).path("event").asString()).isEqualTo("PAINTING_SCANNED");
+        assertThat(events.get(1).path("event").asString()).isEqualTo("LEADERBOARD_UPDATE");
+        assertThat(events.get(1).path("data").path("version").asInt()).isEqualTo(2);
+    }
+
+    @Test
+    void mergesScansIntoTheRouteCompletionThatFollows() {
+        JsonNode events = coalesce(
+                delivery("PAINTING_SCANNED", "{\"userId\":1,\"routeId\":2,\"paintingId\":3}"),
+                delivery("PAINTING_SCANNED", "{\"userId\":9,\"routeId\":2,\"paintingId\":3}"),
+                delivery("PAINTING_SCANNED", "{\"userId\":1,\"routeId\":2,\"paintingId\":4}"),
+                delivery("ROUTE_COMPLETED", "{\"userId\":1,\"routeId\":2,\"totalStops\":2}")
+        );
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).path("data").path("userId").asInt()).isEqualTo(9);
+
+        JsonNode completion = events.get(1);
+        assertThat(completion.path("event").asString()).isEqualTo("ROUTE_COMPLETED");
+        assertThat(completion.path("mergedEvents")).hasSize(2);
+        assertThat(completion.path("mergedEvents").get(0).path("data").path("paintingId").asInt()).isEqualTo(3);
+        assertThat(completion.path("mergedEvents").get(1).path("data").path("paintingId").asInt()).isEqualTo(4);
+    }
+
+    @Test
+    void keepsScansWithoutALaterCompletion() {
+        JsonNode events = coalesce(
+                delivery("ROUTE_COMPLETED", "{\"userId\":1,\"routeId\":2,\"totalStops\":2}"),
+                delivery("PAINTING_SCANNED", "{\"userId\":1,\"routeId\":2,\"paintingId\":3}"),
+                delivery("PAINTING_SCANNED", "{\"userId\":1,\"routeId\":5,\"paintingId\":6}")
+        );
+
+        assertThat(events).hasSize(3);
+        assertThat(events.get(0).has("mergedEvents")).isFalse();
+    }
+
+    @Test
+    void backoffDoublesPerAttemptWithJitter() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(webhookService.backoffSeconds(1)).isBetween(8L, 12L);
+            assertThat(webhookService.backoffSeconds(2)).isBetween(16L, 24L);
+            assertThat(webhookService.backoffSeconds(4)).isBetween(64L, 96L);
+        }
+    }
+
+    @Test
+    void backoffIsCappedAtTheMaximum() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(webhookService.backoffSeconds(20)).isBetween(2880L, 4320L);
+            assertThat(webhookService.backoffSeconds(1000)).isBetween(2880L, 4320L);
+        }
+    }
+
+    @Test
+    void retriesTheRowsOfAFailedBatchTogether() {
+        WebhookDeliveryRepository deliveryRepository = mock(WebhookDeliveryRepository.class);
+        WebhookService service = new WebhookService(null, null, deliveryRepository, null, jsonMapper, 2000, 5000, 8, 10, 3600, 50);
+        List<WebhookDelivery> rows = List.of(attempted(1L, 1), attempted(2L, 3), attempted(3L, 1), attempted(4L, 1));
+        when(deliveryRepository.findAllById(any())).thenReturn(rows);
+
+        service.complete(List.of(
+                new WebhookService.DeliveryResult(1L, 503, "HTTP 503", false, 0),
+                new WebhookService.DeliveryResult(2L, 503, "HTTP 503", false, 0),
+                new WebhookService.DeliveryResult(3L, 503, "HTTP 503", false, 0),
+                new WebhookService.DeliveryResult(4L, null, "Connection refused", false, 1)
+        ));
+
+        // One backoff for the batch, from its most attempted row: 40s +-20%
+        LocalDateTime batchRetry = rows.get(0).getNextAttemptAt();
+        assertThat(rows.get(1).getNextAttemptAt()).isEqualTo(batchRetry);
+        assertThat(rows.get(2).getNextAttemptAt()).isEqualTo(batchRetry);
+        assertThat(batchRetry).isBetween(LocalDateTime.now().plusSeconds(31), LocalDateTime.now().plusSeconds(49));
+        assertThat(rows.get(3).getNextAttemptAt()).isBefore(LocalDateTime.now().plusSeconds(13));
+    }
+
+    private JsonNode coalesce(WebhookDelivery... batch) {
+        return jsonMapper.readTree(webhookService.coalesce(List.of(batch)));
+    }
+
+    private static WebhookDelivery attempted(Long id, int attempts) {
+        return WebhookDelivery.builder().id(id).attempts(attempts).build();
+    }
+
+    private static WebhookDelivery delivery(String event, String data) {
+        return WebhookDelivery.builder()
+                .payload("{\"event\":\"" + event + "\",\"timestamp\":\"2026-01-01T00:00:00Z\",\"data\":" + data + "}")
+                .build();
+    }
+}